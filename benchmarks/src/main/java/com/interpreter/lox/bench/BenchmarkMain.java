@@ -0,0 +1,25 @@
+package com.interpreter.lox.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the JMH benchmarks with the GC profiler always attached, so every result comes with
+// its allocation rate (gc.alloc.rate.norm is bytes per operation). Accepts the usual JMH
+// command line, e.g. a regex selecting benchmarks or -p workload=fib.
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        try {
+            new Runner(new OptionsBuilder()
+                    .parent(options)
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+        } catch (RunnerException error) {
+            System.err.println(error.getMessage());
+            System.exit(1);
+        }
+    }
+}
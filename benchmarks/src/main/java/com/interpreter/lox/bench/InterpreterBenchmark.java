@@ -0,0 +1,55 @@
+package com.interpreter.lox.bench;
+
+import com.interpreter.lox.interpreter.Interpreter;
+import com.interpreter.lox.interpreter.Output;
+import com.interpreter.lox.lexer.Scanner;
+import com.interpreter.lox.optimizer.Optimizer;
+import com.interpreter.lox.parser.FlatAST;
+import com.interpreter.lox.parser.Parser;
+import com.interpreter.lox.parser.Stmt;
+import com.interpreter.lox.resolver.Resolver;
+import com.interpreter.lox.vm.Compiler;
+import com.interpreter.lox.vm.VM;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// End-to-end runs of the workloads in bench/: scan, parse, resolve, optimize and execute on
+// the selected engine, the way `jlox [--engine=tree|vm] script` does.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({"fib", "arith", "loop", "strings", "closures", "blocks"})
+    String workload;
+
+    @Param({"tree", "vm"})
+    String engine;
+
+    String source;
+
+    @Setup
+    public void setup() {
+        source = Sources.workload(workload);
+    }
+
+    @Benchmark
+    public void run() {
+        List<Stmt> statements = new Parser(new Scanner(source)).parse();
+        new Resolver().resolve(statements);
+        statements = new Optimizer().optimize(statements);
+
+        // scripts print their result, keep it out of the JMH report
+        Output output = new Output(Writer.nullWriter());
+        if(engine.equals("vm")) {
+            new VM(output).interpret(new Compiler().compile(FlatAST.flatten(statements)));
+        } else {
+            new Interpreter(output).interpret(statements);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.interpreter.lox.bench;
+
+import com.interpreter.lox.lexer.Scanner;
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.lexer.TokenStream;
+import com.interpreter.lox.parser.Parser;
+import com.interpreter.lox.parser.Stmt;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parsing the tokens of a large generated program, from a token list and from a TokenStream,
+// and lexing plus parsing it from source.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"1000", "10000"})
+    int functions;
+
+    String source;
+    List<Token> tokens;
+    TokenStream stream;
+
+    @Setup
+    public void setup() {
+        source = Sources.generated(functions);
+        tokens = new Scanner(source).scanTokens();
+        stream = TokenStream.scan(source);
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> parseStream() {
+        return new Parser(stream).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> scanAndParse() {
+        return new Parser(new Scanner(source)).parse();
+    }
+}
@@ -0,0 +1,38 @@
+package com.interpreter.lox.bench;
+
+import com.interpreter.lox.lexer.Scanner;
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.lexer.TokenStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lexing a large generated program into Token objects and into a TokenStream.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+    @Param({"1000", "10000"})
+    int functions;
+
+    String source;
+
+    @Setup
+    public void setup() {
+        source = Sources.generated(functions);
+    }
+
+    @Benchmark
+    public List<Token> scan() {
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public TokenStream scanStream() {
+        return TokenStream.scan(source);
+    }
+}
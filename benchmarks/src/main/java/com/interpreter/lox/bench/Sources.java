@@ -0,0 +1,45 @@
+package com.interpreter.lox.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// Lox programs fed to the benchmarks.
+final class Sources {
+    private Sources() {}
+
+    // one of the scripts in bench/, packaged as a resource
+    static String workload(String name) {
+        try(InputStream input = Sources.class.getResourceAsStream("/workloads/" + name + ".lox")) {
+            if(input == null) throw new IllegalArgumentException("No workload named " + name);
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    // A large program covering every token and statement kind, made of `functions`
+    // independent function declarations.
+    static String generated(int functions) {
+        StringBuilder source = new StringBuilder();
+        for(int i = 0; i < functions; i++) {
+            source.append("// function number ").append(i).append('\n')
+                    .append("fun f").append(i).append("(a, b, c) {\n")
+                    .append("  var total = 0;\n")
+                    .append("  var name = \"function ").append(i).append("\";\n")
+                    .append("  for (var i = 0; i < a; i = i + 1) {\n")
+                    .append("    if (i >= b and !(i == c) or i != 12.5) {\n")
+                    .append("      total = total + (i * 2 - b / 3) * -c;\n")
+                    .append("    } else {\n")
+                    .append("      total = total - 1;\n")
+                    .append("    }\n")
+                    .append("  }\n")
+                    .append("  while (total > 100 and total <= 1000) total = total / 2;\n")
+                    .append("  if (name == nil or false) print name; else print true;\n")
+                    .append("  return f").append(i).append(";\n")
+                    .append("}\n");
+        }
+        return source.toString();
+    }
+}
@@ -1,42 +1,140 @@
 package com.interpreter.lox;
 
+import com.interpreter.lox.cache.ProgramCache;
 import com.interpreter.lox.interpreter.Interpreter;
+import com.interpreter.lox.interpreter.Output;
 import com.interpreter.lox.lexer.Scanner;
 import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.lexer.TokenStream;
+import com.interpreter.lox.optimizer.Optimizer;
 import com.interpreter.lox.parser.*;
+import com.interpreter.lox.resolver.Resolver;
+import com.interpreter.lox.vm.Chunk;
+import com.interpreter.lox.vm.Compiler;
+import com.interpreter.lox.vm.VM;
 import com.interpreter.lox.util.RuntimeError;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.interpreter.lox.lexer.TokenType.EOF;
 
 public class Lox {
-    static boolean hadError = false;
+    public static final String VERSION = "1.0";
+    // the passes after the parser walk the tree recursively, so deeply nested expressions
+    // need far more than the default stack; only the part actually used gets committed
+    private static final long STACK_SIZE = 1L << 30;
+
+    private enum Engine {
+        TREE,
+        VM
+    }
+
+    // set from the threads loading imported modules as well
+    static volatile boolean hadError = false;
     static boolean hadRuntimeError = false;
 
-    private static final Interpreter interpreter = new Interpreter();
+    // module whose errors are being reported on this thread, null for the script itself
+    static final ThreadLocal<String> module = new ThreadLocal<>();
+    // errors of a LoxProgram being compiled on this thread, handed back to the embedder
+    // instead of printed
+    static final ThreadLocal<List<LoxError>> collected = new ThreadLocal<>();
 
-    public static void main(String[] args) throws IOException {
-        if (args.length > 2) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+    // what scripts print, flushed when the run ends and before any error is reported
+    private static final Output output = Output.standard();
+    private static final Interpreter interpreter = new Interpreter(output);
+    private static final VM vm = new VM(output);
+    private static Engine engine = Engine.TREE;
+    private static boolean optimize = true;
+    private static boolean cache = false;
+    private static Path cacheDirectory = null;
+    private static boolean lazy = false;
+    private static boolean strict = false;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        IOException[] failure = new IOException[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                start(args);
+            } catch (IOException e) {
+                failure[0] = e;
+            } finally {
+                output.flush();
+            }
+        }, "lox", STACK_SIZE);
+        thread.start();
+        thread.join();
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    private static void start(String[] args) throws IOException {
+        String script = null;
+        String precompile = null;
+        for (String arg : args) {
+            if (arg.equals("--engine=tree")) {
+                engine = Engine.TREE;
+            } else if (arg.equals("--engine=vm")) {
+                engine = Engine.VM;
+            } else if (arg.equals("-O0")) {
+                optimize = false;
+            } else if (arg.equals("-O1")) {
+                optimize = true;
+            } else if (arg.equals("--lazy")) {
+                lazy = true;
+            } else if (arg.equals("--strict")) {
+                strict = true;
+            } else if (arg.equals("--cache")) {
+                cache = true;
+            } else if (arg.startsWith("--cache-dir=")) {
+                cache = true;
+                cacheDirectory = Paths.get(arg.substring("--cache-dir=".length()));
+            } else if (arg.startsWith("--precompile=")) {
+                precompile = arg.substring("--precompile=".length());
+            } else if (arg.startsWith("-") || script != null) {
+                usage();
+            } else {
+                script = arg;
+            }
+        }
+
+        // the VM and the cache work on a FlatAST, and flattening a tree parses every deferred
+        // body, so the whole program is parsed up front and its errors reported before it runs
+        if (engine == Engine.VM || cache || precompile != null)
+            lazy = false;
+
+        if (precompile != null) {
+            if (script != null)
+                usage();
+            precompile(Paths.get(precompile));
+        } else if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: jlox [--engine=tree|vm] [-O0|-O1] [--lazy [--strict]] [--cache|--cache-dir=dir] [script]");
+        System.out.println("       jlox [-O0|-O1] [--cache-dir=dir] --precompile=dir");
+        exit(64);
+    }
+
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
+        // files imported at the prompt run once per session
+        ModuleLoader modules = moduleLoader();
+        output.setLineBuffered(true);
 
         while (true) {
             System.out.print("> ");
@@ -48,35 +146,169 @@ public class Lox {
                 reader.close();
                 break;
             }
-            run(line);
+            run(new Parser(new Scanner(line)), null, modules);
             hadError = false;
         }
     }
 
     private static void runFile(String path) throws IOException {
         Path p = Paths.get(path);
-        byte[] bytes = Files.readAllBytes(p);
-        run(new String(bytes, Charset.defaultCharset()));
+        if (cache) {
+            runCached(p);
+        } else if (lazy) {
+            // deferred bodies are parsed from the token stream later on, so it is kept in memory
+            run(parser(Files.readString(p, Charset.defaultCharset())), p, moduleLoader());
+        } else {
+            // the scanner reads the file as the parser asks for tokens
+            try (Reader reader = Files.newBufferedReader(p, Charset.defaultCharset())) {
+                run(new Parser(new Scanner(reader)), p, moduleLoader());
+            }
+        }
         if (hadError)
-            System.exit(65);
+            exit(65);
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    // The whole file is needed up front to hash it, so cached runs don't stream the source.
+    private static void runCached(Path path) throws IOException {
+        ProgramCache programs = programCache();
+        byte[] source = Files.readAllBytes(path);
+        byte[] key = programs.key(source);
+
+        FlatAST ast = programs.load(path, key);
+        if (ast != null) {
+            execute(ast);
+            return;
+        }
+
+        ModuleLoader modules = moduleLoader();
+        List<Stmt> statements = compile(parser(new String(source, Charset.defaultCharset())), path, modules);
+        if (statements == null)
+            return;
+        ast = FlatAST.flatten(statements);
+        // the key only covers the script's own source, so programs importing files aren't cached
+        if (!modules.importsFiles()) {
+            try {
+                programs.store(path, key, ast);
+            } catch (IOException e) {
+                // the run doesn't depend on the cache, it only gets slower
+                System.err.println("Could not cache " + path + ": " + e.getMessage());
+            }
+        }
+        if (engine == Engine.VM) {
+            execute(ast);
+        } else {
+            execute(statements);
+        }
+    }
+
+    // Compiles every script under the directory into the cache without running it.
+    private static void precompile(Path directory) throws IOException {
+        ProgramCache programs = programCache();
+        List<Path> scripts;
+        try (Stream<Path> files = Files.walk(directory)) {
+            scripts = files.filter(file -> file.toString().endsWith(".lox") && Files.isRegularFile(file))
+                    .collect(Collectors.toList());
+        }
+
+        boolean failed = false;
+        for (Path script : scripts) {
+            byte[] source = Files.readAllBytes(script);
+            ModuleLoader modules = moduleLoader();
+            List<Stmt> statements = compile(parser(new String(source, Charset.defaultCharset())), script, modules);
+            if (statements == null) {
+                System.err.println("Not cached: " + script);
+                failed = true;
+                hadError = false;
+                continue;
+            }
+            if (modules.importsFiles()) {
+                System.err.println("Not cached, imports other files: " + script);
+                continue;
+            }
+            programs.store(script, programs.key(source), FlatAST.flatten(statements));
+        }
+        if (failed)
+            exit(65);
+    }
 
-        Parser parser = new Parser(tokens);
+    // Compiled programs depend on the optimization level as well as on the source.
+    private static ProgramCache programCache() {
+        return new ProgramCache(cacheDirectory, VERSION + (optimize ? " -O1" : " -O0"));
+    }
+
+    private static Parser parser(String source) {
+        if (lazy)
+            return new Parser(TokenStream.scan(source), true);
+        return new Parser(new Scanner(source));
+    }
+
+    private static ModuleLoader moduleLoader() {
+        return new ModuleLoader(Lox::parser, strict);
+    }
+
+    private static void run(Parser parser, Path file, ModuleLoader modules) {
+        List<Stmt> statements = compile(parser, file, modules);
+        if (statements != null)
+            execute(statements);
+    }
+
+    // Parses, resolves, links and optimizes a program, null when it has errors.
+    private static List<Stmt> compile(Parser parser, Path file, ModuleLoader modules) {
         List<Stmt> statements = parser.parse();
+        if (strict)
+            parser.parseDeferred();
 
         if (hadError)
+            return null;
+
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+
+        if (hadError)
+            return null;
+
+        statements = modules.link(file, statements);
+
+        if (hadError)
+            return null;
+
+        if (optimize) {
+            statements = new Optimizer().optimize(statements);
+        }
+        return statements;
+    }
+
+    private static void execute(List<Stmt> statements) {
+        if (engine == Engine.VM) {
+            execute(FlatAST.flatten(statements));
             return;
-        interpreter.interpret(statements);
+        }
 
+        interpreter.interpret(statements);
         if (hadRuntimeError)
-            System.exit(70);
+            exit(70);
         // System.out.println(new ASTPrinter().print(expression));
     }
 
+    private static void execute(FlatAST ast) {
+        if (engine == Engine.VM) {
+            Chunk script = new Compiler().compile(ast);
+            if (hadError)
+                return;
+            vm.interpret(script);
+        } else {
+            interpreter.interpret(ast.inflate());
+        }
+
+        if (hadRuntimeError)
+            exit(70);
+    }
+
+    private static void exit(int status) {
+        output.flush();
+        System.exit(status);
+    }
+
     public static void error(int line, String message) {
         report(line, "", message);
     }
@@ -85,17 +317,27 @@ public class Lox {
         if (token.type == EOF) {
             report(token.line, " at end", message);
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            report(token.line, " at '" + token.lexeme() + "'", message);
         }
     }
 
     public static void runtimeError(RuntimeError error) {
+        output.flush();
         System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
         hadRuntimeError = true;
     }
 
     private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
+        List<LoxError> errors = collected.get();
+        if (errors != null) {
+            errors.add(new LoxError(line, "Error" + where + ": " + message));
+            return;
+        }
+
+        output.flush();
+        String file = module.get();
+        String location = file == null ? "line " + line : file + ", line " + line;
+        System.err.println("[" + location + "] Error" + where + ": " + message);
         hadError = true;
     }
 
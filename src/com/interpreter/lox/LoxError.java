@@ -0,0 +1,27 @@
+package com.interpreter.lox;
+
+// A compile or runtime error of an embedded program, reported as a value.
+// The message reads the same as on the command line.
+public final class LoxError {
+    private final int line;
+    private final String message;
+
+    LoxError(int line, String message) {
+        this.line = line;
+        this.message = message;
+    }
+
+    // 0 when the error has no place in the source, like a stack overflow
+    public int line() {
+        return line;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return line == 0 ? message : "[line " + line + "] " + message;
+    }
+}
@@ -0,0 +1,134 @@
+package com.interpreter.lox;
+
+import com.interpreter.lox.interpreter.Interpreter;
+import com.interpreter.lox.interpreter.LoxString;
+import com.interpreter.lox.interpreter.Output;
+import com.interpreter.lox.lexer.Scanner;
+import com.interpreter.lox.optimizer.Optimizer;
+import com.interpreter.lox.parser.Parser;
+import com.interpreter.lox.parser.Stmt;
+import com.interpreter.lox.resolver.Resolver;
+import com.interpreter.lox.util.RuntimeError;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Entry point for running Lox inside another Java program. A program is compiled once and
+// can then be executed any number of times, from any number of threads at once: the tree
+// is never changed after compiling except for the interpreter's guarded caches, and every
+// execution gets globals of its own. Errors are returned, nothing is printed and nothing
+// exits; `print` writes to the writer given to execute(), standard output by default.
+// Imports are a command line feature, embedded programs get their code from the embedder.
+public final class LoxProgram {
+    // Interpreters are reused by the executions on their thread. A thread takes its instance
+    // out while running, so an execution started from inside another one gets a new one.
+    private static final ThreadLocal<Interpreter> idle = new ThreadLocal<>();
+
+    private final List<Stmt> statements;
+    private final List<LoxError> errors;
+
+    private LoxProgram(List<Stmt> statements, List<LoxError> errors) {
+        this.statements = statements;
+        this.errors = errors;
+    }
+
+    // Scans, parses, resolves and optimizes the source; a program with errors can't run.
+    public static LoxProgram compile(String source) {
+        List<LoxError> errors = new ArrayList<>();
+        List<Stmt> statements = List.of();
+        Lox.collected.set(errors);
+        try {
+            Parser parser = new Parser(new Scanner(source));
+            statements = parser.parse();
+            if (errors.isEmpty())
+                new Resolver().resolve(statements);
+            if (errors.isEmpty()) {
+                for (Stmt stmt : statements) {
+                    if (stmt instanceof Stmt.Import)
+                        Lox.error(((Stmt.Import) stmt).path, "Can't import files from an embedded program.");
+                }
+            }
+            if (errors.isEmpty())
+                statements = new Optimizer().optimize(statements);
+        } catch (StackOverflowError e) {
+            errors.add(new LoxError(0, "Error: Program is nested too deeply."));
+        } finally {
+            Lox.collected.remove();
+        }
+        return new LoxProgram(errors.isEmpty() ? statements : List.of(), List.copyOf(errors));
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    // the compile errors, empty for a program that can run
+    public List<LoxError> errors() {
+        return errors;
+    }
+
+    public LoxResult execute() {
+        return execute(Map.of());
+    }
+
+    public LoxResult execute(Map<String, ?> globals) {
+        return execute(globals, null);
+    }
+
+    // Runs the program with the given values defined as globals. Java numbers are turned
+    // into Lox numbers, anything else is passed as it is. What the program prints goes to
+    // `out`, written once the run ends or whenever a buffer's worth has collected; a null
+    // writer means standard output.
+    public LoxResult execute(Map<String, ?> globals, Writer out) {
+        if (hasErrors())
+            return new LoxResult(errors, Map.of());
+
+        Interpreter interpreter = idle.get();
+        if (interpreter == null) {
+            interpreter = new Interpreter();
+        } else {
+            idle.remove();
+        }
+
+        Output standard = interpreter.output();
+        if (out != null)
+            interpreter.setOutput(new Output(out));
+        try {
+            Map<String, Object> natives = interpreter.globals.values();
+            for (Map.Entry<String, ?> global : globals.entrySet()) {
+                interpreter.globals.define(global.getKey(), toLox(global.getValue()));
+            }
+
+            List<LoxError> failure = List.of();
+            try {
+                interpreter.execute(statements);
+            } catch (RuntimeError error) {
+                failure = List.of(new LoxError(error.token.line, error.getMessage()));
+            } catch (StackOverflowError e) {
+                failure = List.of(new LoxError(0, "Stack overflow."));
+            }
+
+            Map<String, Object> result = interpreter.globals.values();
+            natives.forEach(result::remove);
+            // Java callers expect Strings, whatever representation the text had in Lox
+            result.replaceAll((name, value) -> value instanceof LoxString ? value.toString() : value);
+            interpreter.output().flush();
+            return new LoxResult(failure, result);
+        } finally {
+            interpreter.setOutput(standard);
+            // clean for the next run, and the values of this one don't stay reachable
+            interpreter.reset();
+            idle.set(interpreter);
+        }
+    }
+
+    private static Object toLox(Object value) {
+        if (value instanceof Number && !(value instanceof Double))
+            return ((Number) value).doubleValue();
+        if (value instanceof Character)
+            return value.toString();
+        return value;
+    }
+}
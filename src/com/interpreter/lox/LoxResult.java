@@ -0,0 +1,33 @@
+package com.interpreter.lox;
+
+import java.util.List;
+import java.util.Map;
+
+// Outcome of one execution of a LoxProgram: the errors that stopped it, if any, and the
+// global variables the program left behind. Natives it didn't redefine are left out.
+public final class LoxResult {
+    private final List<LoxError> errors;
+    private final Map<String, Object> globals;
+
+    LoxResult(List<LoxError> errors, Map<String, Object> globals) {
+        this.errors = errors;
+        this.globals = globals;
+    }
+
+    public boolean succeeded() {
+        return errors.isEmpty();
+    }
+
+    public List<LoxError> errors() {
+        return errors;
+    }
+
+    public Map<String, Object> globals() {
+        return globals;
+    }
+
+    // the value of a global variable, null when it is nil or undefined
+    public Object get(String name) {
+        return globals.get(name);
+    }
+}
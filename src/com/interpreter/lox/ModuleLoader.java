@@ -0,0 +1,198 @@
+package com.interpreter.lox;
+
+import com.interpreter.lox.parser.Parser;
+import com.interpreter.lox.parser.Stmt;
+import com.interpreter.lox.resolver.Resolver;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+// Loads the files a program imports and links them into it.
+// Every imported file is scanned, parsed and resolved exactly once, by a task on the common
+// ForkJoinPool; a module forks one task per import of a file nobody has claimed yet, so a
+// whole import graph loads in parallel. Top-level code only reaches globals, which are looked
+// up by name at runtime, so each module resolves on its own.
+// Imports are only allowed at the top level, where statements run in order, so running a
+// module at its first import is the same as putting its statements in place of that import.
+// link() does that depth first and drops every later import of the same file, which also
+// ends import cycles. The statements of a module are shared, never copied.
+class ModuleLoader {
+    private static class Module {
+        final Path path;
+        final String name;
+        // left empty when the file has errors, which are reported while loading
+        List<Stmt> statements = List.of();
+        boolean missing = false;
+        boolean resolved = false;
+
+        Module(Path path) {
+            this.path = path;
+            this.name = displayName(path);
+        }
+    }
+
+    private final Function<String, Parser> parsers;
+    private final boolean strict;
+    private final Map<Path, Module> modules = new ConcurrentHashMap<>();
+    // files already linked into the program, kept for the whole REPL session
+    private final Set<Path> linked = new HashSet<>();
+
+    ModuleLoader(Function<String, Parser> parsers, boolean strict) {
+        this.parsers = parsers;
+        this.strict = strict;
+    }
+
+    // The program with the files it imports linked in, the same list when it imports none.
+    // `file` is the script the statements come from, null for code typed at the prompt.
+    List<Stmt> link(Path file, List<Stmt> statements) {
+        if (!hasImports(statements))
+            return statements;
+
+        Path directory = file == null ? Paths.get("") : file.toAbsolutePath().getParent();
+        if (file != null)
+            linked.add(file.toAbsolutePath().normalize());
+
+        load(directory, statements);
+        List<Stmt> program = new ArrayList<>();
+        link(directory, null, statements, program);
+        return program;
+    }
+
+    // Whether anything was loaded, which makes the program depend on more than its own source.
+    boolean importsFiles() {
+        return !modules.isEmpty();
+    }
+
+    // Forks a task for every imported file not loaded yet and waits for all of them.
+    private void load(Path directory, List<Stmt> statements) {
+        List<LoadTask> tasks = new ArrayList<>();
+        for (Stmt stmt : statements) {
+            if (!(stmt instanceof Stmt.Import))
+                continue;
+            Module module = new Module(resolve(directory, (Stmt.Import) stmt));
+            if (modules.putIfAbsent(module.path, module) == null)
+                tasks.add(new LoadTask(module));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    private void link(Path directory, String name, List<Stmt> statements, List<Stmt> program) {
+        for (Stmt stmt : statements) {
+            if (!(stmt instanceof Stmt.Import)) {
+                program.add(stmt);
+                continue;
+            }
+
+            Stmt.Import declaration = (Stmt.Import) stmt;
+            Module module = modules.get(resolve(directory, declaration));
+            if (module.missing) {
+                inModule(name, () -> Lox.error(declaration.path, "Can't read module."));
+                continue;
+            }
+            if (!module.resolved) {
+                inModule(module.name, () -> new Resolver().resolve(module.statements));
+                module.resolved = true;
+            }
+            if (linked.add(module.path))
+                link(module.path.getParent(), module.name, module.statements, program);
+        }
+    }
+
+    private class LoadTask extends RecursiveAction {
+        private final Module module;
+
+        LoadTask(Module module) {
+            this.module = module;
+        }
+
+        @Override
+        protected void compute() {
+            String source;
+            try {
+                source = Files.readString(module.path, Charset.defaultCharset());
+            } catch (IOException e) {
+                // reported by link() at the import, where the line is known
+                module.missing = true;
+                return;
+            }
+
+            List<Stmt> statements = parse(source);
+            if (statements == null)
+                return;
+            module.statements = statements;
+            load(module.path.getParent(), statements);
+        }
+
+        private List<Stmt> parse(String source) {
+            Lox.module.set(module.name);
+            try {
+                Parser parser = parsers.apply(source);
+                List<Stmt> statements = parser.parse();
+                if (strict)
+                    parser.parseDeferred();
+                if (parser.hadError())
+                    return null;
+
+                Resolver resolver = new Resolver();
+                try {
+                    resolver.resolve(statements);
+                    module.resolved = true;
+                } catch (StackOverflowError e) {
+                    // pool threads have default stacks, link() resolves it again on the main thread;
+                    // not once errors were reported, the program won't run and a second pass would
+                    // only report them again
+                    if (resolver.hadError())
+                        module.resolved = true;
+                }
+                return statements;
+            } finally {
+                Lox.module.remove();
+            }
+        }
+    }
+
+    private static boolean hasImports(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            if (stmt instanceof Stmt.Import)
+                return true;
+        }
+        return false;
+    }
+
+    // paths are relative to the directory of the importing file
+    private static Path resolve(Path directory, Stmt.Import declaration) {
+        String lexeme = declaration.path.lexeme();
+        return directory.resolve(lexeme.substring(1, lexeme.length() - 1)).toAbsolutePath().normalize();
+    }
+
+    // errors in a module name the file, the ones in the script itself keep the usual format
+    private static void inModule(String name, Runnable action) {
+        if (name == null) {
+            action.run();
+            return;
+        }
+        Lox.module.set(name);
+        try {
+            action.run();
+        } finally {
+            Lox.module.remove();
+        }
+    }
+
+    private static String displayName(Path path) {
+        Path workingDirectory = Paths.get("").toAbsolutePath();
+        return path.startsWith(workingDirectory) ? workingDirectory.relativize(path).toString() : path.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package com.interpreter.lox.cache;
+
+import com.interpreter.lox.parser.FlatAST;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Compiled programs (.loxc files) saved between runs, so an unchanged script skips scanning,
+// parsing, resolving and optimizing. An entry is keyed by a SHA-256 of the source together
+// with everything that changes the compiled tree: the interpreter configuration and the
+// FlatAST layout. A .loxc file is the magic number, the key and the serialized FlatAST.
+// Without a directory the entry sits next to its script (script.lox -> script.loxc),
+// otherwise it is named after its key inside the directory.
+public class ProgramCache {
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    private static final int KEY_BYTES = 32;
+
+    private final Path directory;
+    private final String configuration;
+
+    public ProgramCache(Path directory, String configuration) {
+        this.directory = directory;
+        this.configuration = configuration;
+    }
+
+    public byte[] key(byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(FlatAST.FORMAT).array());
+            digest.update(source);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The cached program for the key, or null when there is none or it is stale or unreadable.
+    public FlatAST load(Path script, byte[] key) {
+        Path file = entry(script, key);
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.getInt() != MAGIC)
+                return null;
+            byte[] stored = new byte[KEY_BYTES];
+            in.get(stored);
+            if (!Arrays.equals(stored, key))
+                return null;
+            return FlatAST.read(in);
+        } catch (IOException | RuntimeException e) {
+            // a truncated or corrupted entry is only a miss, the script gets compiled again
+            return null;
+        }
+    }
+
+    public void store(Path script, byte[] key, FlatAST ast) throws IOException {
+        Path file = entry(script, key);
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        // written aside and moved in place, so concurrent runs never see half an entry
+        Path temp = file.resolveSibling(file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).array());
+                out.write(key);
+                ast.write(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path entry(Path script, byte[] key) {
+        if (directory == null) {
+            return script.resolveSibling(script.getFileName() + "c");
+        }
+
+        StringBuilder name = new StringBuilder(KEY_BYTES * 2 + 5);
+        for (byte b : key) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return directory.resolve(name.append(".loxc").toString());
+    }
+}
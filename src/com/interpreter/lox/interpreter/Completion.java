@@ -0,0 +1,9 @@
+package com.interpreter.lox.interpreter;
+
+// How a statement finished executing. Anything but NORMAL makes the enclosing blocks stop
+// and hand the completion outwards until the construct it targets consumes it; for RETURN
+// that is LoxFunction.call, which picks up the value the Interpreter stored aside.
+public enum Completion {
+    NORMAL,
+    RETURN,
+}
@@ -1,49 +1,93 @@
 package com.interpreter.lox.interpreter;
 
+import com.interpreter.lox.lexer.Symbol;
 import com.interpreter.lox.lexer.Token;
 import com.interpreter.lox.util.RuntimeError;
 
 import java.util.HashMap;
 import java.util.Map;
 
+// Locals of blocks and function calls live in a fixed-size array indexed by the slots
+// the Resolver hands out. Only the global environment keeps name-based storage, since
+// globals (and the REPL) can't be resolved statically. It is keyed by interned Symbols, so
+// a lookup compares keys by identity and never hashes the name.
 public class Environment {
+    private static final Object[] NO_SLOTS = new Object[0];
+    // marks a missing variable in lookups, where null is the value nil
+    private static final Object UNDEFINED = new Object();
+
     public final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private final Map<Symbol, Object> values;
+    private final Object[] slots;
 
     public Environment() {
         enclosing = null;
+        values = new HashMap<>();
+        slots = NO_SLOTS;
     }
 
-    public Environment(Environment enclosing) {
+    public Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.values = null;
+        this.slots = size == 0 ? NO_SLOTS : new Object[size];
     }
 
 
-    public void define(String name, Object value) {
+    public void define(Symbol name, Object value) {
         values.put(name, value);
     }
 
-    public Object get(Token name) {
-        if(values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
-        if(enclosing != null) {
-            return enclosing.get(name);
+    public void define(String name, Object value) {
+        define(Symbol.of(name), value);
+    }
+
+    // a copy of the variables of the global environment by name
+    public Map<String, Object> values() {
+        Map<String, Object> copy = new HashMap<>();
+        values.forEach((name, value) -> copy.put(name.name, value));
+        return copy;
+    }
+
+    public void clear() {
+        values.clear();
+    }
+
+    public void define(int slot, Object value) {
+        slots[slot] = value;
+    }
+
+    // distance and slot come from the Resolver, so the frame is known to hold the variable
+    public Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
+    }
+
+    public void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
+    }
+
+    private Environment ancestor(int distance) {
+        Environment environment = this;
+        for(int i = 0; i < distance; i++) {
+            environment = environment.enclosing;
         }
-        throw  new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return environment;
     }
 
-    public void assign(Token name, Object value) {
-        if(values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
+    public Object get(Token name) {
+        Object value = values.getOrDefault(name.symbol(), UNDEFINED);
+        if(value != UNDEFINED) {
+            return value;
         }
+        throw  new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+    }
 
-        if(enclosing != null) {
-            enclosing.assign(name, value);
+    public void assign(Token name, Object value) {
+        Symbol symbol = name.symbol();
+        if(values.containsKey(symbol)) {
+            values.put(symbol, value);
             return;
         }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
     }
 }
@@ -7,59 +7,65 @@ import com.interpreter.lox.parser.Expr;
 import com.interpreter.lox.util.RuntimeError;
 import com.interpreter.lox.parser.Stmt;
 
-import java.util.ArrayList;
 import java.util.List;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+import static com.interpreter.lox.interpreter.Specialization.*;
+
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
     public final Environment globals = new Environment();
     private Environment environment = globals;
-
-
-
+    // value of the last executed return, read once its RETURN completion reaches the call
+    private Object returnValue;
+    private Output output;
 
     public Interpreter() {
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+        this(Output.standard());
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double) System.currentTimeMillis() / 1000.0;
-            }
+    public Interpreter(Output output) {
+        this.output = output;
+        Natives.define(globals);
+    }
 
-            @Override
-            public String toString() {
-                return "<native fn>";
-            }
-        });
+    public Output output() {
+        return output;
+    }
+
+    public void setOutput(Output output) {
+        this.output = output;
     }
 
     public void interpret(List<Stmt> statements) {
         try {
-            for(Stmt stmt: statements) {
-                execute(stmt);
-            }
+            execute(statements);
         } catch (RuntimeError error) {
             Lox.runtimeError(error);
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    // Runs a program, leaving its runtime error to the caller.
+    public void execute(List<Stmt> statements) {
+        for(Stmt stmt: statements) {
+            execute(stmt);
+        }
+    }
+
+    // Forgets everything earlier programs defined, so a pooled instance can run the next one.
+    public void reset() {
+        globals.clear();
+        Natives.define(globals);
+        environment = globals;
+        returnValue = null;
+    }
+
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
     }
 
-    private String stringify(Object value) {
+    public static String stringify(Object value) {
         if(value == null) return "nil";
 
-        if(value instanceof Double) {
-            String text = value.toString();
-            if(text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
-        }
+        if(value instanceof Double) return Numbers.toString((double) value);
 
         return value.toString();
     }
@@ -67,15 +73,98 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
        Object value = evaluate(expr.value);
-       environment.assign(expr.name, value);
+       if(expr.depth != -1) {
+           environment.assignAt(expr.depth, expr.slot, value);
+       } else {
+           globals.assign(expr.name, value);
+       }
        return value;
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        // numeric nodes keep intermediate results unboxed, boxing only the final value
+        int specialization = expr.specialization;
+        if(isArithmetic(specialization)) {
+            try {
+                return arithmeticDouble(expr, specialization);
+            } catch (UnexpectedResult result) {
+                return result.value;
+            }
+        }
+        if(isComparison(specialization)) {
+            try {
+                return compareDoubles(expr, specialization);
+            } catch (UnexpectedResult result) {
+                return result.value;
+            }
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
+        switch (expr.specialization) {
+            case STRING_ADD:
+                if(LoxString.isString(left) && LoxString.isString(right))
+                    return LoxString.concat(left, right);
+                break;
+            case EQUAL:
+                return isEqual(left, right);
+            case NOT_EQUAL:
+                return !isEqual(left, right);
+            case UNINITIALIZED:
+                specialization = specializeBinary(expr.operator.type, left, right);
+                expr.specialization = specialization;
+                if(specialization != GENERIC) return specializedBinary(expr, specialization, left, right);
+                break;
+        }
+
+        // the type guard failed (or no specialization applies), stay generic from now on
+        expr.specialization = GENERIC;
+        return genericBinary(expr, left, right);
+    }
+
+    // re-dispatches already evaluated operands after the node specialized itself
+    private Object specializedBinary(Expr.Binary expr, int specialization, Object left, Object right) {
+        switch (specialization) {
+            case NUMBER_ADD: return (double) left + (double) right;
+            case STRING_ADD: return LoxString.concat(left, right);
+            case NUMBER_SUBTRACT: return (double) left - (double) right;
+            case NUMBER_MULTIPLY: return (double) left * (double) right;
+            case NUMBER_DIVIDE: return (double) left / (double) right;
+            case NUMBER_GREATER: return (double) left > (double) right;
+            case NUMBER_GREATER_EQUAL: return (double) left >= (double) right;
+            case NUMBER_LESS: return (double) left < (double) right;
+            case NUMBER_LESS_EQUAL: return (double) left <= (double) right;
+            case EQUAL: return isEqual(left, right);
+            case NOT_EQUAL: return !isEqual(left, right);
+        }
+        return genericBinary(expr, left, right);
+    }
+
+    private static int specializeBinary(TokenType operator, Object left, Object right) {
+        if(operator == TokenType.EQUAL_EQUAL) return EQUAL;
+        if(operator == TokenType.BANG_EQUAL) return NOT_EQUAL;
+
+        if(left instanceof Double && right instanceof Double) {
+            switch (operator) {
+                case PLUS: return NUMBER_ADD;
+                case MINUS: return NUMBER_SUBTRACT;
+                case STAR: return NUMBER_MULTIPLY;
+                case SLASH: return NUMBER_DIVIDE;
+                case GREATER: return NUMBER_GREATER;
+                case GREATER_EQUAL: return NUMBER_GREATER_EQUAL;
+                case LESS: return NUMBER_LESS;
+                case LESS_EQUAL: return NUMBER_LESS_EQUAL;
+            }
+        }
+        if(operator == TokenType.PLUS && LoxString.isString(left) && LoxString.isString(right)) {
+            return STRING_ADD;
+        }
+        return GENERIC;
+    }
+
+    private Object genericBinary(Expr.Binary expr, Object left, Object right) {
         switch (expr.operator.type) {
             case GREATER:
                 checkNumberOperands(expr.operator, left, right);
@@ -96,8 +185,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             case PLUS:
                 if(left instanceof Double && right instanceof Double)
                     return (double) left + (double) right;
-                if(left instanceof String && right instanceof String)
-                    return (String) left + (String) right;
+                if(LoxString.isString(left) && LoxString.isString(right))
+                    return LoxString.concat(left, right);
                 throw new RuntimeError(expr.operator, "Operands must be numbers or strings");
             case MINUS:
                 checkNumberOperands(expr.operator, left, right);
@@ -116,24 +205,56 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
-        List<Object> arguments = new ArrayList<>();
+        List<Expr> args = expr.arguments;
+
+        // common argument counts go through the fixed-arity entry points, no array needed
+        switch (args.size()) {
+            case 0:
+                return checkCall(expr, callee, 0).call0(this);
+            case 1: {
+                Object a = evaluate(args.get(0));
+                return checkCall(expr, callee, 1).call1(this, a);
+            }
+            case 2: {
+                Object a = evaluate(args.get(0));
+                Object b = evaluate(args.get(1));
+                return checkCall(expr, callee, 2).call2(this, a, b);
+            }
+            case 3: {
+                Object a = evaluate(args.get(0));
+                Object b = evaluate(args.get(1));
+                Object c = evaluate(args.get(2));
+                return checkCall(expr, callee, 3).call3(this, a, b, c);
+            }
+        }
 
-        for(Expr arg: expr.arguments) {
-            arguments.add(evaluate(arg));
+        Object[] arguments = new Object[args.size()];
+        for(int i = 0; i < arguments.length; i++) {
+            arguments[i] = evaluate(args.get(i));
         }
+        return checkCall(expr, callee, arguments.length).call(this, arguments);
+    }
+
+    // Checks that the callee can take argCount arguments. Every function a declaration creates
+    // has its arity, so the call site remembers the declaration of the last function that
+    // passed and skips the check for it. The tree is shared by every run of a program, it
+    // only ever refers to other nodes, never to the function or its closure.
+    public static LoxCallable checkCall(Expr.Call expr, Object callee, int argCount) {
+        if(callee instanceof LoxFunction && ((LoxFunction) callee).declaration() == expr.checked)
+            return (LoxCallable) callee;
 
         if(!(callee instanceof LoxCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
 
         LoxCallable function = (LoxCallable) callee;
-        if(arguments.size() != function.arity()) {
+        if(argCount != function.arity()) {
             throw new RuntimeError(expr.paren,
-                    "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+                    "Expected " + function.arity() + " arguments but got " + argCount + ".");
         }
 
-        return function.call(this,arguments);
-
+        if(function instanceof LoxFunction) expr.checked = ((LoxFunction) function).declaration();
+        return function;
     }
 
     @Override
@@ -150,6 +271,28 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitLogicalExpr(Expr.Logical expr) {
         Object left = evaluate(expr.left);
 
+        switch (expr.specialization) {
+            case BOOLEAN_OR:
+                if(left instanceof Boolean) return (boolean) left ? left : evaluate(expr.right);
+                break;
+            case BOOLEAN_AND:
+                if(left instanceof Boolean) return (boolean) left ? evaluate(expr.right) : left;
+                break;
+            case UNINITIALIZED:
+                if(left instanceof Boolean) {
+                    boolean or = expr.operator.type == TokenType.OR;
+                    expr.specialization = or ? BOOLEAN_OR : BOOLEAN_AND;
+                    if(or) return (boolean) left ? left : evaluate(expr.right);
+                    return (boolean) left ? evaluate(expr.right) : left;
+                }
+                break;
+        }
+
+        expr.specialization = GENERIC;
+        return genericLogical(expr, left);
+    }
+
+    private Object genericLogical(Expr.Logical expr, Object left) {
         if(expr.operator.type == TokenType.OR) {
             if(isTruthy(left)) return left;
         } else {
@@ -161,8 +304,37 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if(expr.specialization == NUMBER_NEGATE) {
+            try {
+                return evaluateDouble(expr);
+            } catch (UnexpectedResult result) {
+                return result.value;
+            }
+        }
+
         Object right = evaluate(expr.right);
 
+        switch (expr.specialization) {
+            case BOOLEAN_NOT:
+                if(right instanceof Boolean) return !(boolean) right;
+                break;
+            case UNINITIALIZED:
+                if(expr.operator.type == TokenType.MINUS && right instanceof Double) {
+                    expr.specialization = NUMBER_NEGATE;
+                    return -(double) right;
+                }
+                if(expr.operator.type == TokenType.BANG && right instanceof Boolean) {
+                    expr.specialization = BOOLEAN_NOT;
+                    return !(boolean) right;
+                }
+                break;
+        }
+
+        expr.specialization = GENERIC;
+        return genericUnary(expr, right);
+    }
+
+    private Object genericUnary(Expr.Unary expr, Object right) {
         switch (expr.operator.type) {
             case BANG:
                 return !isTruthy(right);
@@ -176,87 +348,107 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
+        if(expr.depth != -1) {
+            return environment.getAt(expr.depth, expr.slot);
+        }
+        return globals.get(expr.name);
     }
 
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        return executeBlock(stmt.statements, new Environment(environment, stmt.locals));
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
        LoxFunction function = new LoxFunction(stmt, environment);
-       environment.define(stmt.name.lexeme, function);
-       return null;
+       if(stmt.slot != -1) {
+           environment.define(stmt.slot, function);
+       } else {
+           globals.define(stmt.name.symbol(), function);
+       }
+       return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
-         if(isTruthy(evaluate(stmt.condition))) {
-             execute(stmt.thenBranch);
+    public Completion visitIfStmt(Stmt.If stmt) {
+         if(evaluateBoolean(stmt.condition)) {
+             return execute(stmt.thenBranch);
          } else if(stmt.elseBranch != null) {
-             execute(stmt.elseBranch);
+             return execute(stmt.elseBranch);
          }
 
-         return null;
+         return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitImportStmt(Stmt.Import stmt) {
+        // the ModuleLoader replaces imports with the imported statements before execution
+        throw new RuntimeError(stmt.keyword, "Import was not linked.");
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        output.printValue(value);
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
 
         Object value = null;
         if(stmt.value != null) {
             value = evaluate(stmt.value);
         }
 
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if(stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        if(stmt.slot != -1) {
+            environment.define(stmt.slot, value);
+        } else {
+            globals.define(stmt.name.symbol(), value);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-       while (isTruthy(evaluate(stmt.condition))) {
-           execute(stmt.body);
+    public Completion visitWhileStmt(Stmt.While stmt) {
+       while (evaluateBoolean(stmt.condition)) {
+           Completion completion = execute(stmt.body);
+           if(completion != Completion.NORMAL) return completion;
        }
 
-       return null;
+       return Completion.NORMAL;
     }
 
-    public void executeBlock(List<Stmt> stmts, Environment environment) {
+    public Completion executeBlock(List<Stmt> stmts, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for(Stmt stmt: stmts) {
-                execute(stmt);
+                Completion completion = execute(stmt);
+                if(completion != Completion.NORMAL) return completion;
             }
+            return Completion.NORMAL;
         }finally {
             this.environment = previous;
         }
@@ -273,12 +465,21 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be numbers");
     }
 
-    private boolean isEqual(Object left, Object right) {
+    // Hands over the value of the return that produced the current RETURN completion.
+    public Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    public static boolean isEqual(Object left, Object right) {
         if(left == null && right == null) return  true;
         if(left == null) return  false;
+        // a LoxString equals the String with the same text, compared from either side
+        if(right instanceof LoxString) return right.equals(left);
         return left.equals(right);
     }
-    private boolean isTruthy(Object object) {
+    public static boolean isTruthy(Object object) {
         if (object == null) return  false;
         if(object instanceof Boolean) return (boolean) object;
         return true;
@@ -288,4 +489,113 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return expression.accept(this);
     }
 
+    // Evaluates an expression expected to produce a number without boxing it.
+    // Nodes specialized for number arithmetic evaluate their operands the same way, so
+    // nested arithmetic never allocates. When the value turns out not to be a number,
+    // the node falls back to the generic path and UnexpectedResult carries the result.
+    private double evaluateDouble(Expr expression) {
+        if(expression instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expression;
+            int specialization = binary.specialization;
+            if(isArithmetic(specialization)) return arithmeticDouble(binary, specialization);
+        } else if(expression instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expression;
+            if(unary.specialization == NUMBER_NEGATE) return negateDouble(unary);
+        } else if(expression instanceof Expr.Grouping) {
+            return evaluateDouble(((Expr.Grouping) expression).expression);
+        }
+
+        Object value = evaluate(expression);
+        if(value instanceof Double) return (double) value;
+        throw new UnexpectedResult(value);
+    }
+
+    // Evaluates a condition to its truthiness; comparisons of numbers stay unboxed.
+    private boolean evaluateBoolean(Expr expression) {
+        if(expression instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expression;
+            int specialization = binary.specialization;
+            if(isComparison(specialization)) {
+                try {
+                    return compareDoubles(binary, specialization);
+                } catch (UnexpectedResult result) {
+                    return isTruthy(result.value);
+                }
+            }
+        }
+        return isTruthy(evaluate(expression));
+    }
+
+    private double arithmeticDouble(Expr.Binary expr, int specialization) {
+        double left;
+        try {
+            left = evaluateDouble(expr.left);
+        } catch (UnexpectedResult result) {
+            // still evaluate the right operand before reporting or combining
+            Object right = evaluate(expr.right);
+            expr.specialization = GENERIC;
+            throw new UnexpectedResult(genericBinary(expr, result.value, right));
+        }
+
+        double right;
+        try {
+            right = evaluateDouble(expr.right);
+        } catch (UnexpectedResult result) {
+            expr.specialization = GENERIC;
+            throw new UnexpectedResult(genericBinary(expr, left, result.value));
+        }
+
+        switch (specialization) {
+            case NUMBER_ADD: return left + right;
+            case NUMBER_SUBTRACT: return left - right;
+            case NUMBER_MULTIPLY: return left * right;
+            default: return left / right;
+        }
+    }
+
+    private boolean compareDoubles(Expr.Binary expr, int specialization) {
+        double left;
+        try {
+            left = evaluateDouble(expr.left);
+        } catch (UnexpectedResult result) {
+            Object right = evaluate(expr.right);
+            expr.specialization = GENERIC;
+            throw new UnexpectedResult(genericBinary(expr, result.value, right));
+        }
+
+        double right;
+        try {
+            right = evaluateDouble(expr.right);
+        } catch (UnexpectedResult result) {
+            expr.specialization = GENERIC;
+            throw new UnexpectedResult(genericBinary(expr, left, result.value));
+        }
+
+        switch (specialization) {
+            case NUMBER_GREATER: return left > right;
+            case NUMBER_GREATER_EQUAL: return left >= right;
+            case NUMBER_LESS: return left < right;
+            default: return left <= right;
+        }
+    }
+
+    private double negateDouble(Expr.Unary expr) {
+        try {
+            return -evaluateDouble(expr.right);
+        } catch (UnexpectedResult result) {
+            expr.specialization = GENERIC;
+            throw new UnexpectedResult(genericUnary(expr, result.value));
+        }
+    }
+
+    private static boolean isArithmetic(int specialization) {
+        return specialization == NUMBER_ADD || specialization == NUMBER_SUBTRACT
+                || specialization == NUMBER_MULTIPLY || specialization == NUMBER_DIVIDE;
+    }
+
+    private static boolean isComparison(int specialization) {
+        return specialization == NUMBER_GREATER || specialization == NUMBER_GREATER_EQUAL
+                || specialization == NUMBER_LESS || specialization == NUMBER_LESS_EQUAL;
+    }
+
 }
@@ -3,35 +3,104 @@ package com.interpreter.lox.interpreter;
 import com.interpreter.lox.interpreter.Environment;
 import com.interpreter.lox.interpreter.Interpreter;
 import com.interpreter.lox.interpreter.LoxCallable;
+import com.interpreter.lox.jit.CompiledFunction;
+import com.interpreter.lox.jit.JitCompiler;
+import com.interpreter.lox.parser.LazyBody;
 import com.interpreter.lox.parser.Stmt;
 
 import java.util.List;
 
 public class LoxFunction implements LoxCallable {
+    // calls after which the body is compiled to JVM bytecode, 0 disables compilation
+    private static final int JIT_THRESHOLD = Integer.getInteger("lox.jit.threshold", 1000);
+
     private final Stmt.Function declaration;
     private final Environment closure;
+    private List<Stmt> body;
+    private int calls = 0;
+    private CompiledFunction compiled;
 
     public LoxFunction(Stmt.Function declaration, Environment closure) {
         this.declaration = declaration;
         this.closure = closure;
     }
 
+    Stmt.Function declaration() {
+        return declaration;
+    }
+
     @Override
     public int arity() {
         return declaration.params.size();
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for(int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        if(isCompiled()) return compiled.invoke(interpreter, closure, arguments);
+
+        Environment environment = frame();
+        // parameters occupy the first slots of the frame
+        for(int i = 0; i < arguments.length; i++) {
+            environment.define(i, arguments[i]);
+        }
+        return execute(interpreter, environment);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        if(isCompiled()) return compiled.invoke0(interpreter, closure);
+
+        return execute(interpreter, frame());
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        if(isCompiled()) return compiled.invoke1(interpreter, closure, a);
+
+        Environment environment = frame();
+        environment.define(0, a);
+        return execute(interpreter, environment);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        if(isCompiled()) return compiled.invoke2(interpreter, closure, a, b);
+
+        Environment environment = frame();
+        environment.define(0, a);
+        environment.define(1, b);
+        return execute(interpreter, environment);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        if(isCompiled()) return compiled.invoke3(interpreter, closure, a, b, c);
+
+        Environment environment = frame();
+        environment.define(0, a);
+        environment.define(1, b);
+        environment.define(2, c);
+        return execute(interpreter, environment);
+    }
+
+    // counts the call and reports whether the compiled body should run it
+    private boolean isCompiled() {
+        if(compiled == null && calls < JIT_THRESHOLD && ++calls == JIT_THRESHOLD) {
+            // stays null when the body can't be compiled, the tree-walker keeps running it
+            compiled = JitCompiler.compile(declaration);
         }
+        return compiled != null;
+    }
+
+    private Environment frame() {
+        // a deferred body is parsed and resolved on the first call, which also sets its locals
+        if(body == null) body = LazyBody.force(declaration.body);
+        return new Environment(closure, declaration.locals);
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnVal) {
-            return returnVal.value;
+    private Object execute(Interpreter interpreter, Environment environment) {
+        if(interpreter.executeBlock(body, environment) == Completion.RETURN) {
+            return interpreter.takeReturnValue();
         }
 
         return null;
@@ -39,6 +108,6 @@ public class LoxFunction implements LoxCallable {
 
     @Override
     public String toString() {
-        return "<fn " + declaration.name.lexeme + ">";
+        return "<fn " + declaration.name.lexeme() + ">";
     }
 }
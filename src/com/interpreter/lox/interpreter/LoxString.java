@@ -0,0 +1,97 @@
+package com.interpreter.lox.interpreter;
+
+// A Lox string made by concatenation, the other representation next to java.lang.String.
+// Strings built by repeated `+` share one growing StringBuilder, each seeing a fixed prefix
+// of it. Appending to the newest string on a builder appends in place, so building a string
+// in a loop is linear instead of copying everything built so far on every step; appending to
+// an older one copies it into a builder of its own. The text only becomes a String when the
+// value is compared or hashed, printing copies it straight from the builder.
+// Results shorter than MIN_LENGTH stay plain Strings, which are cheaper for small values.
+// Like every runtime value it belongs to the thread running its program.
+public final class LoxString implements CharSequence {
+    static final int MIN_LENGTH = 64;
+
+    private final StringBuilder chars;
+    private final int length;
+    private String flat;
+
+    private LoxString(StringBuilder chars, int length) {
+        this.chars = chars;
+        this.length = length;
+    }
+
+    public static boolean isString(Object value) {
+        return value instanceof String || value instanceof LoxString;
+    }
+
+    // Concatenates two values isString() accepts.
+    public static Object concat(Object left, Object right) {
+        CharSequence text = (CharSequence) right;
+        int length = ((CharSequence) left).length() + text.length();
+
+        if(left instanceof LoxString) {
+            LoxString string = (LoxString) left;
+            if(string.chars.length() == string.length) {
+                append(string.chars, text);
+                return new LoxString(string.chars, length);
+            }
+        } else if(length < MIN_LENGTH) {
+            // a LoxString is never that short, so both are Strings
+            return (String) left + (String) right;
+        }
+
+        StringBuilder chars = new StringBuilder(length);
+        append(chars, (CharSequence) left);
+        append(chars, text);
+        return new LoxString(chars, length);
+    }
+
+    private static void append(StringBuilder chars, CharSequence text) {
+        if(text instanceof LoxString) {
+            LoxString string = (LoxString) text;
+            chars.append(string.chars, 0, string.length);
+        } else {
+            chars.append((String) text);
+        }
+    }
+
+    // Copies the text into the array at the offset.
+    void getChars(char[] destination, int offset) {
+        chars.getChars(0, length, destination, offset);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if(index >= length) throw new StringIndexOutOfBoundsException(index);
+        return chars.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if(flat == null) flat = chars.substring(0, length);
+        return flat;
+    }
+
+    // equal to any Lox string with the same text, whichever representation it has
+    @Override
+    public boolean equals(Object other) {
+        if(this == other) return true;
+        if(!isString(other) || ((CharSequence) other).length() != length) return false;
+        return toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
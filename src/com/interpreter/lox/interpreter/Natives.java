@@ -0,0 +1,30 @@
+package com.interpreter.lox.interpreter;
+
+// Native functions shared by every execution engine.
+public class Natives {
+    private Natives() {}
+
+    public static void define(Environment globals) {
+        globals.define("clock", new LoxCallable() {
+            @Override
+            public int arity() {
+                return 0;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
+                return (double) System.currentTimeMillis() / 1000.0;
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+    }
+}
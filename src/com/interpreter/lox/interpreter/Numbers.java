@@ -0,0 +1,55 @@
+package com.interpreter.lox.interpreter;
+
+// Text of Lox numbers: Double.toString without the ".0" of integral values.
+// Double.toString writes plain notation below 1e7, so every number that would lose a ".0"
+// is an int there and gets formatted by a digit loop. Everything else keeps the exact text
+// of Double.toString, which never ends in ".0" for those values, with -0.0 as the one
+// exception.
+final class Numbers {
+    private Numbers() {}
+
+    // "-9999999"
+    static final int MAX_INTEGER_LENGTH = 8;
+
+    // Whether the number is integral and below 1e7; -0 isn't, it prints with its sign.
+    static boolean isPlainInteger(double value) {
+        return value > -1e7 && value < 1e7 && value == (int) value
+                && (value != 0 || Double.doubleToRawLongBits(value) == 0);
+    }
+
+    static String toString(double value) {
+        if(isPlainInteger(value)) return Integer.toString((int) value);
+        if(value == 0) return "-0";
+        return Double.toString(value);
+    }
+
+    // Writes a plain integer at the offset and returns the offset after it.
+    static int writeInteger(int value, char[] buffer, int offset) {
+        int magnitude = Math.abs(value);
+        if(value < 0) buffer[offset++] = '-';
+
+        int end = offset + digits(magnitude);
+        int position = end;
+        do {
+            buffer[--position] = (char) ('0' + magnitude % 10);
+            magnitude /= 10;
+        } while(magnitude != 0);
+        return end;
+    }
+
+    // Appends any number that isn't a plain integer, without creating a string for it.
+    static void append(StringBuilder out, double value) {
+        // StringBuilder.append(double) is specified to give the text of Double.toString
+        out.append(value);
+        if(value == 0) out.setLength(out.length() - 2);
+    }
+
+    private static int digits(int magnitude) {
+        int count = 1;
+        while(magnitude >= 10) {
+            magnitude /= 10;
+            count++;
+        }
+        return count;
+    }
+}
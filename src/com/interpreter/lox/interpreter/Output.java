@@ -0,0 +1,130 @@
+package com.interpreter.lox.interpreter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Where print statements write, shared by every execution engine. Lines collect in a buffer
+// that goes to the writer in one piece once it holds `capacity` chars, on flush(), or after
+// every line when line buffered. The buffer starts small and only grows up to the capacity,
+// so a sink for a program that prints little stays cheap to create.
+// Not thread-safe: every Interpreter or VM has its own.
+public final class Output {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int INITIAL_SIZE = 256;
+
+    private final Writer out;
+    private final int capacity;
+    private boolean lineBuffered;
+    private char[] buffer = new char[0];
+    private int length = 0;
+    // scratch space for numbers that aren't integers
+    private StringBuilder digits;
+
+    public Output(Writer out, int capacity, boolean lineBuffered) {
+        this.out = out;
+        this.capacity = Math.max(capacity, 1);
+        this.lineBuffered = lineBuffered;
+    }
+
+    public Output(Writer out) {
+        this(out, DEFAULT_CAPACITY, false);
+    }
+
+    // Standard output at the time of the call; the writer only encodes, the buffering is ours.
+    public static Output standard() {
+        return new Output(new OutputStreamWriter(System.out, Charset.defaultCharset()));
+    }
+
+    // for interactive use, where every line has to show up as soon as it is printed
+    public void setLineBuffered(boolean lineBuffered) {
+        this.lineBuffered = lineBuffered;
+        if(lineBuffered) flush();
+    }
+
+    public void println(String text) {
+        reserve(text.length() + 1);
+        text.getChars(0, text.length(), buffer, length);
+        length += text.length();
+        endLine();
+    }
+
+    // Prints a Lox value on a line of its own. Numbers, the most printed values, are
+    // formatted right into the buffer instead of going through a string, and concatenated
+    // strings are copied from their builder.
+    public void printValue(Object value) {
+        if(value instanceof LoxString) {
+            LoxString string = (LoxString) value;
+            reserve(string.length() + 1);
+            string.getChars(buffer, length);
+            length += string.length();
+            endLine();
+            return;
+        }
+        if(!(value instanceof Double)) {
+            println(Interpreter.stringify(value));
+            return;
+        }
+
+        double number = (double) value;
+        if(Numbers.isPlainInteger(number)) {
+            reserve(Numbers.MAX_INTEGER_LENGTH + 1);
+            length = Numbers.writeInteger((int) number, buffer, length);
+        } else {
+            if(digits == null) digits = new StringBuilder(32);
+            digits.setLength(0);
+            Numbers.append(digits, number);
+            reserve(digits.length() + 1);
+            digits.getChars(0, digits.length(), buffer, length);
+            length += digits.length();
+        }
+        endLine();
+    }
+
+    // Hands everything printed so far to the writer and flushes it.
+    public void flush() {
+        flushBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Makes room for the next `chars` chars, writing out what is buffered if they don't fit.
+    private void reserve(int chars) {
+        int needed = length + chars;
+        if(needed > capacity) {
+            flushBuffer();
+            needed = chars;
+        }
+        if(needed > buffer.length) {
+            // a line longer than the capacity gets a buffer of its own size, written and
+            // dropped right away
+            int size = Math.min(Math.max(buffer.length * 2, INITIAL_SIZE), capacity);
+            buffer = Arrays.copyOf(buffer, Math.max(size, needed));
+        }
+    }
+
+    private void endLine() {
+        buffer[length++] = '\n';
+        if(lineBuffered || length >= capacity) flush();
+    }
+
+    private void flushBuffer() {
+        if(length == 0) return;
+        try {
+            out.write(buffer, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            length = 0;
+            // only buffers up to the capacity are kept, a pooled interpreter doesn't hold on
+            // to the memory of one huge line
+            if(buffer.length > capacity) buffer = new char[0];
+        }
+    }
+}
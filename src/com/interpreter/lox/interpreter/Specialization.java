@@ -0,0 +1,35 @@
+package com.interpreter.lox.interpreter;
+
+// States of the self-specializing Binary, Unary and Logical nodes.
+// A node starts UNINITIALIZED, rewrites itself on its first evaluation into the variant
+// matching the operand types it saw, and drops to GENERIC for good once a type guard fails.
+// Threads running the same program share the nodes, so an evaluation reads the state once
+// and dispatches on that copy; a racing update only costs another transition.
+final class Specialization {
+    private Specialization() {}
+
+    static final int UNINITIALIZED = 0;
+    static final int GENERIC = 1;
+
+    // Binary
+    static final int NUMBER_ADD = 2;
+    static final int STRING_ADD = 3;
+    static final int NUMBER_SUBTRACT = 4;
+    static final int NUMBER_MULTIPLY = 5;
+    static final int NUMBER_DIVIDE = 6;
+    static final int NUMBER_GREATER = 7;
+    static final int NUMBER_GREATER_EQUAL = 8;
+    static final int NUMBER_LESS = 9;
+    static final int NUMBER_LESS_EQUAL = 10;
+    // equality works on any operands, only the operator dispatch is specialized away
+    static final int EQUAL = 11;
+    static final int NOT_EQUAL = 12;
+
+    // Unary
+    static final int NUMBER_NEGATE = 13;
+    static final int BOOLEAN_NOT = 14;
+
+    // Logical
+    static final int BOOLEAN_AND = 15;
+    static final int BOOLEAN_OR = 16;
+}
@@ -0,0 +1,12 @@
+package com.interpreter.lox.interpreter;
+
+// Thrown by the primitive evaluation paths when a node specialized for numbers produces
+// something else. Carries the boxed result so the caller can continue generically.
+class UnexpectedResult extends RuntimeException {
+    final Object value;
+
+    UnexpectedResult(Object value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+}
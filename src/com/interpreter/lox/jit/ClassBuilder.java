@@ -0,0 +1,377 @@
+package com.interpreter.lox.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the class file format to emit the classes the JitCompiler needs.
+// Classes target version 49 so the verifier infers types itself and no StackMapTable
+// frames have to be computed.
+class ClassBuilder {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+    private static final int MAX_CODE_LENGTH = 0xffff;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<byte[]> fieldInfos = new ArrayList<>();
+    private final List<byte[]> methodInfos = new ArrayList<>();
+
+    byte[] toByteArray(String name, String superName, String interfaceName) {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int iface = classRef(interfaceName);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(iface);
+
+            out.writeShort(fieldInfos.size());
+            for(byte[] field: fieldInfos) out.write(field);
+            out.writeShort(methodInfos.size());
+            for(byte[] method: methodInfos) out.write(method);
+            // no class attributes
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fieldInfos.add(bytes.toByteArray());
+    }
+
+    Code addMethod(int access, String name, String descriptor, int maxLocals) {
+        return new Code(access, name, descriptor, maxLocals);
+    }
+
+    // Constant pool
+
+    int utf8(String value) {
+        return entry("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ":" + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry(tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, EntryWriter writer) {
+        Integer index = poolIndex.get(key);
+        if(index != null) return index;
+
+        try {
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    // Forward or backward branch target inside a Code attribute.
+    static class Label {
+        private int position = -1;
+        private int stack = -1;
+        // offsets of the branch instructions waiting for this label to be placed
+        private final List<Integer> fixups = new ArrayList<>();
+    }
+
+    // Bytecode of a single method. Tracks the operand stack depth to compute max_stack.
+    class Code {
+        static final int ACONST_NULL = 0x01;
+        static final int AALOAD = 0x32;
+        static final int AASTORE = 0x53;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int GOTO = 0xa7;
+        static final int ARETURN = 0xb0;
+        static final int RETURN = 0xb1;
+        static final int ANEWARRAY = 0xbd;
+        static final int CHECKCAST = 0xc0;
+
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final int maxLocals;
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+
+        private Code(int access, String name, String descriptor, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = maxLocals;
+        }
+
+        void op(int opcode) {
+            switch (opcode) {
+                case ACONST_NULL:
+                case DUP:
+                    adjust(1);
+                    break;
+                case AALOAD:
+                case POP:
+                    adjust(-1);
+                    break;
+                case AASTORE:
+                    adjust(-3);
+                    break;
+                case ARETURN:
+                case RETURN:
+                    // nothing after a return is reachable until the next label
+                    stack = 0;
+                    break;
+            }
+            writeByte(opcode);
+        }
+
+        void aload(int index) {
+            writeByte(0x19);
+            writeByte(index);
+            adjust(1);
+        }
+
+        void astore(int index) {
+            writeByte(0x3a);
+            writeByte(index);
+            adjust(-1);
+        }
+
+        void iconst(int value) {
+            if(value >= -1 && value <= 5) {
+                writeByte(0x03 + value);
+            } else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                writeByte(0x10);
+                writeByte(value);
+            } else {
+                writeByte(0x11);
+                writeShort(value);
+            }
+            adjust(1);
+        }
+
+        void typeOp(int opcode, String internalName) {
+            writeByte(opcode);
+            writeShort(classRef(internalName));
+        }
+
+        void getfield(String owner, String fieldName, String fieldDescriptor) {
+            writeByte(0xb4);
+            writeShort(fieldRef(owner, fieldName, fieldDescriptor));
+        }
+
+        void putfield(String owner, String fieldName, String fieldDescriptor) {
+            writeByte(0xb5);
+            writeShort(fieldRef(owner, fieldName, fieldDescriptor));
+            adjust(-2);
+        }
+
+        void invokestatic(String owner, String methodName, String methodDescriptor) {
+            writeByte(0xb8);
+            writeShort(methodRef(owner, methodName, methodDescriptor));
+            adjust(stackEffect(methodDescriptor));
+        }
+
+        void invokevirtual(String owner, String methodName, String methodDescriptor) {
+            writeByte(0xb6);
+            writeShort(methodRef(owner, methodName, methodDescriptor));
+            adjust(stackEffect(methodDescriptor) - 1);
+        }
+
+        void invokespecial(String owner, String methodName, String methodDescriptor) {
+            writeByte(0xb7);
+            writeShort(methodRef(owner, methodName, methodDescriptor));
+            adjust(stackEffect(methodDescriptor) - 1);
+        }
+
+        void invokeinterface(String owner, String methodName, String methodDescriptor) {
+            int effect = stackEffect(methodDescriptor);
+            writeByte(0xb9);
+            writeShort(interfaceMethodRef(owner, methodName, methodDescriptor));
+            writeByte(argumentSlots(methodDescriptor) + 1);
+            writeByte(0);
+            adjust(effect - 1);
+        }
+
+        void jump(int opcode, Label label) {
+            int position = length;
+            writeByte(opcode);
+            writeShort(0);
+            if(opcode != GOTO) adjust(-1);
+
+            label.stack = stack;
+            if(label.position >= 0) {
+                patch(position, label.position);
+            } else {
+                label.fixups.add(position);
+            }
+            if(opcode == GOTO) stack = 0;
+        }
+
+        void place(Label label) {
+            label.position = length;
+            if(label.stack >= 0) stack = label.stack;
+            for(int fixup: label.fixups) {
+                patch(fixup, label.position);
+            }
+            label.fixups.clear();
+        }
+
+        // registers the finished method with the enclosing class
+        void finish() {
+            if(length > MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Method too large.");
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(access);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(1);
+
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                // no exception table, no attributes
+                out.writeShort(0);
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methodInfos.add(bytes.toByteArray());
+        }
+
+        private void patch(int position, int target) {
+            int offset = target - position;
+            if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("Branch offset too large.");
+            }
+            code[position + 1] = (byte) (offset >> 8);
+            code[position + 2] = (byte) offset;
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if(stack > maxStack) maxStack = stack;
+        }
+
+        private void writeByte(int value) {
+            if(length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void writeShort(int value) {
+            writeByte(value >> 8);
+            writeByte(value);
+        }
+    }
+
+    // Stack slots consumed by the arguments of a method descriptor.
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            boolean array = false;
+            char c = descriptor.charAt(i);
+            while (c == '[') {
+                array = true;
+                c = descriptor.charAt(++i);
+            }
+            if(c == 'L') i = descriptor.indexOf(';', i);
+            slots += !array && (c == 'J' || c == 'D') ? 2 : 1;
+            i++;
+        }
+        return slots;
+    }
+
+    // Net stack effect of invoking a static method with the given descriptor.
+    private static int stackEffect(String descriptor) {
+        char returnType = descriptor.charAt(descriptor.indexOf(')') + 1);
+        int returned = returnType == 'V' ? 0 : (returnType == 'J' || returnType == 'D') ? 2 : 1;
+        return returned - argumentSlots(descriptor);
+    }
+}
@@ -0,0 +1,27 @@
+package com.interpreter.lox.jit;
+
+import com.interpreter.lox.interpreter.Environment;
+import com.interpreter.lox.interpreter.Interpreter;
+
+// Entry point of a function body translated to JVM bytecode by the JitCompiler.
+// The code only depends on its declaration, so one instance serves every closure of it.
+// Generated classes override the fixed-arity entry point matching their function.
+public interface CompiledFunction {
+    Object invoke(Interpreter interpreter, Environment closure, Object[] arguments);
+
+    default Object invoke0(Interpreter interpreter, Environment closure) {
+        return invoke(interpreter, closure, new Object[0]);
+    }
+
+    default Object invoke1(Interpreter interpreter, Environment closure, Object a) {
+        return invoke(interpreter, closure, new Object[]{a});
+    }
+
+    default Object invoke2(Interpreter interpreter, Environment closure, Object a, Object b) {
+        return invoke(interpreter, closure, new Object[]{a, b});
+    }
+
+    default Object invoke3(Interpreter interpreter, Environment closure, Object a, Object b, Object c) {
+        return invoke(interpreter, closure, new Object[]{a, b, c});
+    }
+}
@@ -0,0 +1,450 @@
+package com.interpreter.lox.jit;
+
+import com.interpreter.lox.jit.ClassBuilder.Code;
+import com.interpreter.lox.jit.ClassBuilder.Label;
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.lexer.TokenType;
+import com.interpreter.lox.parser.Expr;
+import com.interpreter.lox.parser.LazyBody;
+import com.interpreter.lox.parser.Stmt;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.interpreter.lox.jit.ClassBuilder.*;
+import static com.interpreter.lox.jit.ClassBuilder.Code.*;
+
+// Translates the body of a resolved Stmt.Function into a hidden JVM class so HotSpot
+// can JIT it like any other Java code. Locals of the function and of the blocks nested
+// in it become JVM locals; variables captured from enclosing functions are read through
+// the closure Environment and globals by name, exactly as the Interpreter does.
+// Anything the compiler can't handle (currently nested function declarations) makes
+// compile return null and the function keeps running on the tree-walker.
+public class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final String CLASS_NAME = "com/interpreter/lox/jit/CompiledLoxFunction";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OBJECT_DESCRIPTOR = "Ljava/lang/Object;";
+    private static final String COMPILED_FUNCTION = "com/interpreter/lox/jit/CompiledFunction";
+    private static final String RUNTIME = "com/interpreter/lox/jit/JitRuntime";
+    private static final String ENVIRONMENT = "com/interpreter/lox/interpreter/Environment";
+    private static final String TOKEN = "com/interpreter/lox/lexer/Token";
+    private static final String CALL_SITE = "com/interpreter/lox/parser/Expr$Call";
+    private static final String ENTRY_PARAMETERS =
+            "Lcom/interpreter/lox/interpreter/Interpreter;Lcom/interpreter/lox/interpreter/Environment;";
+    private static final String BINARY = "(Ljava/lang/Object;Ljava/lang/Object;Lcom/interpreter/lox/lexer/Token;)Ljava/lang/Object;";
+
+    // JVM locals of the method holding the body, Lox locals (parameters first) follow them
+    private static final int THIS = 0;
+    private static final int INTERPRETER = 1;
+    private static final int CLOSURE = 2;
+    private static final int FIRST_LOCAL = 3;
+    private static final int MAX_LOCALS = 255;
+
+    // left on a declaration that can't be compiled, so it isn't tried again
+    private static final CompiledFunction UNSUPPORTED = (interpreter, closure, arguments) -> null;
+
+    private final Stmt.Function function;
+    private final ClassBuilder builder = new ClassBuilder();
+    private final List<Object> constants = new ArrayList<>();
+    // first JVM local of every scope inside the function, innermost last
+    private final List<Integer> scopes = new ArrayList<>();
+    private int nextLocal = FIRST_LOCAL;
+    private Code code;
+
+    private JitCompiler(Stmt.Function function) {
+        this.function = function;
+    }
+
+    // The code is kept on the declaration, like the checked declaration on a call site, so it
+    // goes away with the tree. Null when the declaration can't be compiled.
+    public static CompiledFunction compile(Stmt.Function function) {
+        synchronized (function) {
+            if(function.compiled == null) {
+                try {
+                    function.compiled = new JitCompiler(function).generate();
+                } catch (Unsupported error) {
+                    function.compiled = UNSUPPORTED;
+                }
+            }
+            return function.compiled == UNSUPPORTED ? null : function.compiled;
+        }
+    }
+
+    private CompiledFunction generate() {
+        // a deferred body gets parsed and resolved here, which is what sets function.locals
+        List<Stmt> body = LazyBody.force(function.body);
+        int locals = FIRST_LOCAL + function.locals + countBlockLocals(body);
+        if(locals > MAX_LOCALS) throw new Unsupported();
+
+        builder.addField(ACC_PRIVATE | ACC_FINAL, "constants", "[Ljava/lang/Object;");
+
+        Code init = builder.addMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", 2);
+        init.aload(0);
+        init.invokespecial(OBJECT, "<init>", "()V");
+        init.aload(0);
+        init.aload(1);
+        init.putfield(CLASS_NAME, "constants", "[Ljava/lang/Object;");
+        init.op(RETURN);
+        init.finish();
+
+        int arity = function.params.size();
+        String runDescriptor = "(" + ENTRY_PARAMETERS + OBJECT_DESCRIPTOR.repeat(arity) + ")Ljava/lang/Object;";
+        generateEntryPoints(arity, runDescriptor);
+
+        // parameters arrive in the first Lox locals
+        code = builder.addMethod(ACC_PRIVATE, "run", runDescriptor, locals);
+        // the verifier wants every local assigned before it is read
+        for(int local = FIRST_LOCAL + arity; local < locals; local++) {
+            code.op(ACONST_NULL);
+            code.astore(local);
+        }
+
+        beginScope(function.locals);
+        for(Stmt stmt: body) {
+            compile(stmt);
+        }
+        code.op(ACONST_NULL);
+        code.op(ARETURN);
+        try {
+            code.finish();
+        } catch (IllegalStateException error) {
+            throw new Unsupported();
+        }
+
+        byte[] bytes = builder.toByteArray(CLASS_NAME, OBJECT, COMPILED_FUNCTION);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (CompiledFunction) lookup
+                    .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, Object[].class))
+                    .invoke(constants.toArray());
+        } catch (Throwable error) {
+            throw new IllegalStateException("Failed to load compiled function " + function.name.lexeme(), error);
+        }
+    }
+
+    // invoke unpacks the argument array, invoke0..invoke3 pass their arguments straight on
+    private void generateEntryPoints(int arity, String runDescriptor) {
+        Code invoke = builder.addMethod(ACC_PUBLIC, "invoke", "(" + ENTRY_PARAMETERS + "[Ljava/lang/Object;)Ljava/lang/Object;", 4);
+        invoke.aload(THIS);
+        invoke.aload(INTERPRETER);
+        invoke.aload(CLOSURE);
+        for(int i = 0; i < arity; i++) {
+            invoke.aload(3);
+            invoke.iconst(i);
+            invoke.op(AALOAD);
+        }
+        invoke.invokespecial(CLASS_NAME, "run", runDescriptor);
+        invoke.op(ARETURN);
+        invoke.finish();
+
+        if(arity > 3) return;
+        Code fixed = builder.addMethod(ACC_PUBLIC, "invoke" + arity, runDescriptor, FIRST_LOCAL + arity);
+        for(int local = 0; local < FIRST_LOCAL + arity; local++) {
+            fixed.aload(local);
+        }
+        fixed.invokespecial(CLASS_NAME, "run", runDescriptor);
+        fixed.op(ARETURN);
+        fixed.finish();
+    }
+
+    private int countBlockLocals(List<Stmt> statements) {
+        int count = 0;
+        for(Stmt stmt: statements) {
+            if(stmt instanceof Stmt.Block) {
+                Stmt.Block block = (Stmt.Block) stmt;
+                count += block.locals + countBlockLocals(block.statements);
+            } else if(stmt instanceof Stmt.If) {
+                Stmt.If ifStmt = (Stmt.If) stmt;
+                count += countBlockLocals(List.of(ifStmt.thenBranch));
+                if(ifStmt.elseBranch != null) count += countBlockLocals(List.of(ifStmt.elseBranch));
+            } else if(stmt instanceof Stmt.While) {
+                count += countBlockLocals(List.of(((Stmt.While) stmt).body));
+            }
+        }
+        return count;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        code.op(DUP);
+        if(expr.depth == -1) {
+            code.aload(INTERPRETER);
+            loadToken(expr.name);
+            code.invokestatic(RUNTIME, "assignGlobal",
+                    "(Ljava/lang/Object;Lcom/interpreter/lox/interpreter/Interpreter;Lcom/interpreter/lox/lexer/Token;)V");
+        } else if(expr.depth < scopes.size()) {
+            code.astore(local(expr.depth, expr.slot));
+        } else {
+            code.aload(CLOSURE);
+            code.iconst(expr.depth - scopes.size());
+            code.iconst(expr.slot);
+            code.invokestatic(RUNTIME, "assignAt", "(Ljava/lang/Object;L" + ENVIRONMENT + ";II)V");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case BANG_EQUAL:
+                code.invokestatic(RUNTIME, "notEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+                return null;
+            case EQUAL_EQUAL:
+                code.invokestatic(RUNTIME, "equal", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+                return null;
+        }
+
+        loadToken(expr.operator);
+        switch (expr.operator.type) {
+            case GREATER: code.invokestatic(RUNTIME, "greater", BINARY); break;
+            case GREATER_EQUAL: code.invokestatic(RUNTIME, "greaterEqual", BINARY); break;
+            case LESS: code.invokestatic(RUNTIME, "less", BINARY); break;
+            case LESS_EQUAL: code.invokestatic(RUNTIME, "lessEqual", BINARY); break;
+            case PLUS: code.invokestatic(RUNTIME, "add", BINARY); break;
+            case MINUS: code.invokestatic(RUNTIME, "subtract", BINARY); break;
+            case SLASH: code.invokestatic(RUNTIME, "divide", BINARY); break;
+            case STAR: code.invokestatic(RUNTIME, "multiply", BINARY); break;
+            default: throw new Unsupported();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        code.aload(INTERPRETER);
+        compile(expr.callee);
+
+        int argCount = expr.arguments.size();
+        if(argCount <= 3) {
+            for(Expr argument: expr.arguments) {
+                compile(argument);
+            }
+            loadCallSite(expr);
+            code.invokestatic(RUNTIME, "call" + argCount, "(Lcom/interpreter/lox/interpreter/Interpreter;"
+                    + OBJECT_DESCRIPTOR.repeat(argCount + 1) + "L" + CALL_SITE + ";)Ljava/lang/Object;");
+            return null;
+        }
+
+        code.iconst(argCount);
+        code.typeOp(ANEWARRAY, OBJECT);
+        for(int i = 0; i < argCount; i++) {
+            code.op(DUP);
+            code.iconst(i);
+            compile(expr.arguments.get(i));
+            code.op(AASTORE);
+        }
+
+        loadCallSite(expr);
+        code.invokestatic(RUNTIME, "call",
+                "(Lcom/interpreter/lox/interpreter/Interpreter;Ljava/lang/Object;[Ljava/lang/Object;L" + CALL_SITE + ";)Ljava/lang/Object;");
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if(expr.value == null) {
+            code.op(ACONST_NULL);
+        } else {
+            loadConstant(expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        Label end = new Label();
+        compile(expr.left);
+        code.op(DUP);
+        code.invokestatic(RUNTIME, "isTruthy", "(Ljava/lang/Object;)Z");
+        // the left operand is the result when it decides the outcome
+        code.jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+        code.op(POP);
+        compile(expr.right);
+        code.place(end);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case BANG:
+                code.invokestatic(RUNTIME, "not", "(Ljava/lang/Object;)Ljava/lang/Object;");
+                break;
+            case MINUS:
+                loadToken(expr.operator);
+                code.invokestatic(RUNTIME, "negate", "(Ljava/lang/Object;Lcom/interpreter/lox/lexer/Token;)Ljava/lang/Object;");
+                break;
+            default:
+                throw new Unsupported();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if(expr.depth == -1) {
+            code.aload(INTERPRETER);
+            loadToken(expr.name);
+            code.invokestatic(RUNTIME, "getGlobal",
+                    "(Lcom/interpreter/lox/interpreter/Interpreter;Lcom/interpreter/lox/lexer/Token;)Ljava/lang/Object;");
+        } else if(expr.depth < scopes.size()) {
+            code.aload(local(expr.depth, expr.slot));
+        } else {
+            code.aload(CLOSURE);
+            code.iconst(expr.depth - scopes.size());
+            code.iconst(expr.slot);
+            code.invokevirtual(ENVIRONMENT, "getAt", "(II)Ljava/lang/Object;");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope(stmt.locals);
+        for(Stmt statement: stmt.statements) {
+            compile(statement);
+        }
+        scopes.remove(scopes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        code.op(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        // closures would need a real Environment for the frames they capture
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        Label elseBranch = new Label();
+        Label end = new Label();
+
+        compileCondition(stmt.condition);
+        code.jump(IFEQ, elseBranch);
+        compile(stmt.thenBranch);
+        code.jump(GOTO, end);
+        code.place(elseBranch);
+        if(stmt.elseBranch != null) compile(stmt.elseBranch);
+        code.place(end);
+        return null;
+    }
+
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        // only valid at the top level, never inside a function body
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        code.aload(INTERPRETER);
+        code.invokestatic(RUNTIME, "print", "(Ljava/lang/Object;Lcom/interpreter/lox/interpreter/Interpreter;)V");
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if(stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            code.op(ACONST_NULL);
+        }
+        code.op(ARETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if(stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            code.op(ACONST_NULL);
+        }
+        code.astore(local(0, stmt.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Label start = new Label();
+        Label end = new Label();
+
+        code.place(start);
+        compileCondition(stmt.condition);
+        code.jump(IFEQ, end);
+        compile(stmt.body);
+        code.jump(GOTO, start);
+        code.place(end);
+        return null;
+    }
+
+    private void compileCondition(Expr condition) {
+        compile(condition);
+        code.invokestatic(RUNTIME, "isTruthy", "(Ljava/lang/Object;)Z");
+    }
+
+    private void beginScope(int locals) {
+        scopes.add(nextLocal);
+        nextLocal += locals;
+    }
+
+    private int local(int depth, int slot) {
+        return scopes.get(scopes.size() - 1 - depth) + slot;
+    }
+
+    private void loadToken(Token token) {
+        loadConstant(token);
+        code.typeOp(CHECKCAST, TOKEN);
+    }
+
+    // the node is handed to the runtime so compiled code shares the Interpreter's arity check cache
+    private void loadCallSite(Expr.Call expr) {
+        loadConstant(expr);
+        code.typeOp(CHECKCAST, CALL_SITE);
+    }
+
+    private void loadConstant(Object value) {
+        if(constants.size() == Short.MAX_VALUE) throw new Unsupported();
+        constants.add(value);
+        code.aload(THIS);
+        code.getfield(CLASS_NAME, "constants", "[Ljava/lang/Object;");
+        code.iconst(constants.size() - 1);
+        code.op(AALOAD);
+    }
+}
@@ -0,0 +1,123 @@
+package com.interpreter.lox.jit;
+
+import com.interpreter.lox.interpreter.Environment;
+import com.interpreter.lox.interpreter.Interpreter;
+import com.interpreter.lox.interpreter.LoxString;
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.parser.Expr;
+import com.interpreter.lox.util.RuntimeError;
+
+// Operations called from compiled function bodies. They mirror the checks and error
+// messages of the tree-walking Interpreter; being small and static, HotSpot inlines them
+// into the generated code.
+final class JitRuntime {
+    private JitRuntime() {}
+
+    static Object add(Object left, Object right, Token operator) {
+        if(left instanceof Double && right instanceof Double)
+            return (double) left + (double) right;
+        if(LoxString.isString(left) && LoxString.isString(right))
+            return LoxString.concat(left, right);
+        throw new RuntimeError(operator, "Operands must be numbers or strings");
+    }
+
+    static Object subtract(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left - (double) right;
+    }
+
+    static Object multiply(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left * (double) right;
+    }
+
+    static Object divide(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left / (double) right;
+    }
+
+    static Object greater(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left > (double) right;
+    }
+
+    static Object greaterEqual(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left >= (double) right;
+    }
+
+    static Object less(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left < (double) right;
+    }
+
+    static Object lessEqual(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left <= (double) right;
+    }
+
+    static Object equal(Object left, Object right) {
+        return Interpreter.isEqual(left, right);
+    }
+
+    static Object notEqual(Object left, Object right) {
+        return !Interpreter.isEqual(left, right);
+    }
+
+    static Object negate(Object operand, Token operator) {
+        if(!(operand instanceof Double)) {
+            throw new RuntimeError(operator, "Operand must be a number");
+        }
+        return -(double) operand;
+    }
+
+    static Object not(Object operand) {
+        return !Interpreter.isTruthy(operand);
+    }
+
+    static boolean isTruthy(Object value) {
+        return Interpreter.isTruthy(value);
+    }
+
+    static Object getGlobal(Interpreter interpreter, Token name) {
+        return interpreter.globals.get(name);
+    }
+
+    static void assignGlobal(Object value, Interpreter interpreter, Token name) {
+        interpreter.globals.assign(name, value);
+    }
+
+    static void assignAt(Object value, Environment environment, int distance, int slot) {
+        environment.assignAt(distance, slot, value);
+    }
+
+    static void print(Object value, Interpreter interpreter) {
+        interpreter.output().printValue(value);
+    }
+
+    static Object call0(Interpreter interpreter, Object callee, Expr.Call site) {
+        return Interpreter.checkCall(site, callee, 0).call0(interpreter);
+    }
+
+    static Object call1(Interpreter interpreter, Object callee, Object a, Expr.Call site) {
+        return Interpreter.checkCall(site, callee, 1).call1(interpreter, a);
+    }
+
+    static Object call2(Interpreter interpreter, Object callee, Object a, Object b, Expr.Call site) {
+        return Interpreter.checkCall(site, callee, 2).call2(interpreter, a, b);
+    }
+
+    static Object call3(Interpreter interpreter, Object callee, Object a, Object b, Object c, Expr.Call site) {
+        return Interpreter.checkCall(site, callee, 3).call3(interpreter, a, b, c);
+    }
+
+    static Object call(Interpreter interpreter, Object callee, Object[] arguments, Expr.Call site) {
+        return Interpreter.checkCall(site, callee, arguments.length).call(interpreter, arguments);
+    }
+
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) return;
+
+        throw new RuntimeError(operator, "Operands must be numbers");
+    }
+}
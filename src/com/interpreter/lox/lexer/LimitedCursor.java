@@ -0,0 +1,50 @@
+package com.interpreter.lox.lexer;
+
+// The next `remaining` tokens of another cursor, followed by the end of input. peek() still
+// returns the token where it stops, so an error reported there names that token, not EOF.
+class LimitedCursor implements TokenCursor {
+    private final TokenCursor tokens;
+    private int remaining;
+
+    LimitedCursor(TokenCursor tokens, int remaining) {
+        this.tokens = tokens;
+        this.remaining = remaining;
+    }
+
+    @Override
+    public TokenType peekType() {
+        return remaining == 0 ? TokenType.EOF : tokens.peekType();
+    }
+
+    @Override
+    public Token peek() {
+        return tokens.peek();
+    }
+
+    @Override
+    public void advance() {
+        tokens.advance();
+        remaining--;
+    }
+
+    @Override
+    public TokenType previousType() {
+        return tokens.previousType();
+    }
+
+    @Override
+    public Token previous() {
+        return tokens.previous();
+    }
+
+    @Override
+    public Object previousLiteral() {
+        return tokens.previousLiteral();
+    }
+
+    @Override
+    public TokenCursor fork() {
+        TokenCursor fork = tokens.fork();
+        return fork == null ? null : new LimitedCursor(fork, remaining);
+    }
+}
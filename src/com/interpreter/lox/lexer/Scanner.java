@@ -4,87 +4,133 @@ import com.interpreter.lox.Lox;
 import com.interpreter.lox.lexer.Token;
 import com.interpreter.lox.lexer.TokenType;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import static com.interpreter.lox.lexer.TokenType.*;
 
-public class Scanner {
-    private static final Map<String, TokenType> keywords;
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+// Scans tokens on demand from a Reader. Only a window of the input is held in memory:
+// the buffer keeps the lexeme being scanned and whatever has been read past it, so a
+// file never has to be loaded whole and a token is garbage as soon as the Parser is done with it.
+// Scanning allocates no lexeme strings: tokens refer to their lexeme by buffer offset and length, and
+// keywords are told apart from identifiers by comparing characters in place. Identifiers are interned
+// into Symbols, only a name the scanner hasn't seen before builds a string.
+// An in-memory source can also be scanned into a TokenStream, which holds no Token objects at all.
+public class Scanner implements TokenSource {
+    private static final int BUFFER_SIZE = 8192;
+    private final Reader reader;
+    // tokens keep pointing into the buffer, so refilling never overwrites it
+    private char[] buffer;
+    // number of valid characters in the buffer
+    private int limit = 0;
+    private boolean exhausted = false;
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // value of the last NUMBER scanned
+    private double number;
+    // name of the last IDENTIFIER scanned
+    private Symbol symbol;
+    private final Symbols symbols = new Symbols();
 
+    // an in-memory source is scanned as one buffer, there is nothing to read
     public Scanner(String source) {
-        this.source = source;
-    }
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
+        this.reader = null;
+        this.buffer = source.toCharArray();
+        this.limit = buffer.length;
+        this.exhausted = true;
     }
 
+    public Scanner(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+    }
+
+    // Scans the whole input up front, for callers that want every token at once.
     public List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = next();
+            tokens.add(token);
+        } while (token.type != EOF);
+        return tokens;
+    }
+
+    @Override
+    public Token next() {
+        TokenType type = nextType();
+        switch (type) {
+            case IDENTIFIER:
+                return new Token(symbol, line);
+            case NUMBER:
+                return new Token(NUMBER, buffer, start, current - start, number, line);
+            case STRING:
+                return new Token(STRING, buffer, start, current - start,
+                        new String(buffer, start + 1, current - start - 2), line);
+        }
+        // tokens of types with a fixed spelling don't need to look at the source
+        return new Token(type, type.spelling, null, line);
+    }
+
+    // Scans an in-memory source into a TokenStream, creating no Token objects.
+    TokenStream scanStream() {
+        if(reader != null) throw new IllegalStateException("Only an in-memory source can be scanned into a TokenStream.");
+
+        TokenStream stream = new TokenStream(buffer);
+        TokenType type;
+        do {
+            type = nextType();
+            stream.add(type, start, current - start, line, number, symbol);
+        } while (type != EOF);
+        stream.trim();
+        return stream;
+    }
+
+    // Scans up to the end of the next token; start and current then delimit its lexeme.
+    private TokenType nextType() {
         while(!isAtEnd()) {
             start = current;
-            scanToken();
+            TokenType type = scanToken();
+            // whitespace and comments produce no token
+            if(type != null) return type;
         }
 
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        start = current;
+        return EOF;
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !available(0);
     }
 
-    private void scanToken() {
+    private TokenType scanToken() {
         char c = advance();
         switch (c) {
             // Single character lexemes
-            case '(': addToken(LEFT_PAREN); break;
-            case ')': addToken(RIGHT_PAREN); break;
-            case '{': addToken(LEFT_BRACE); break;
-            case '}': addToken(RIGHT_BRACE); break;
-            case ',': addToken(COMMA); break;
-            case '.': addToken(DOT); break;
-            case '-': addToken(MINUS); break;
-            case '+': addToken(PLUS); break;
-            case ';': addToken(SEMICOLON); break;
-            case '*': addToken(STAR); break;
+            case '(': return LEFT_PAREN;
+            case ')': return RIGHT_PAREN;
+            case '{': return LEFT_BRACE;
+            case '}': return RIGHT_BRACE;
+            case ',': return COMMA;
+            case '.': return DOT;
+            case '-': return MINUS;
+            case '+': return PLUS;
+            case ';': return SEMICOLON;
+            case '*': return STAR;
 
             // Double character lexemes
             case '!':
-                addToken(match('=') ? BANG_EQUAL: BANG);
-                break;
+                return match('=') ? BANG_EQUAL: BANG;
             case '=':
-                addToken(match('=') ? EQUAL_EQUAL : EQUAL);
-                break;
+                return match('=') ? EQUAL_EQUAL : EQUAL;
             case '<':
-                addToken(match('=') ? LESS_EQUAL: LESS);
-                break;
+                return match('=') ? LESS_EQUAL: LESS;
             case '>':
-                addToken(match('=') ? GREATER_EQUAL: GREATER);
-                break;
+                return match('=') ? GREATER_EQUAL: GREATER;
 
             // Longer lexeme
             case '/':
@@ -93,87 +139,142 @@ public class Scanner {
                 if(match('/')) {
                     // comment goes until '\n' character
                     while(peek() != '\n' && !isAtEnd()) {
-                        advance();
+                        skip();
                     }
                 } else if(match('*')) {
                     while(!(peek() == '*') && !isAtEnd()) {
                         if(peek() == '\n') line++;
-                        advance();
+                        skip();
                     }
                     if(isAtEnd()) {
                         Lox.error(line, "Unterminated Comment Blog");
-                        return;
+                        return null;
                     }
                     advance();
                     if(peek() != '/' || isAtEnd()) {
                         Lox.error(line ,"Unterminated Comment blog");
-                        return;
+                        return null;
                     }
                     advance();
                 }
                 // Slash Symbol
                 else {
-                    addToken(SLASH);
+                    return SLASH;
                 }
-                break;
+                return null;
             case ' ':
             case '\r':
             case '\t':
                 // Ignore whitespaces
-                break;
+                return null;
 
-            case '\n': line++; break;
-            case '"': string(); break;
+            case '\n': line++; return null;
+            case '"': return string();
             default:
                 if(isDigit(c))
-                    number();
+                    return number();
                 else if(isAlpha(c)) {
-                    identifier();
+                    return identifier();
                 }
                 else
-                    Lox.error(line, "Unexpected character: " + c); break;
+                    Lox.error(line, "Unexpected character: " + c);
+                return null;
         }
     }
 
-    private void identifier() {
+    private TokenType identifier() {
         while (isAlphaNumeric(peek())) advance();
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if(type == null) type = IDENTIFIER;
-        addToken(type);
+        TokenType type = identifierType();
+        if(type == IDENTIFIER) symbol = symbols.intern(buffer, start, current - start);
+        return type;
     }
 
-    private void number() {
+    // Keyword lookup as a trie unrolled into switches on the leading characters.
+    private TokenType identifierType() {
+        switch (buffer[start]) {
+            case 'a': return checkKeyword(1, "nd", AND);
+            case 'c': return checkKeyword(1, "lass", CLASS);
+            case 'e': return checkKeyword(1, "lse", ELSE);
+            case 'f':
+                if(current - start > 1) {
+                    switch (buffer[start + 1]) {
+                        case 'a': return checkKeyword(2, "lse", FALSE);
+                        case 'o': return checkKeyword(2, "r", FOR);
+                        case 'u': return checkKeyword(2, "n", FUN);
+                    }
+                }
+                break;
+            case 'i':
+                if(current - start > 1) {
+                    switch (buffer[start + 1]) {
+                        case 'f': return checkKeyword(2, "", IF);
+                        case 'm': return checkKeyword(2, "port", IMPORT);
+                    }
+                }
+                break;
+            case 'n': return checkKeyword(1, "il", NIL);
+            case 'o': return checkKeyword(1, "r", OR);
+            case 'p': return checkKeyword(1, "rint", PRINT);
+            case 'r': return checkKeyword(1, "eturn", RETURN);
+            case 's': return checkKeyword(1, "uper", SUPER);
+            case 't':
+                if(current - start > 1) {
+                    switch (buffer[start + 1]) {
+                        case 'h': return checkKeyword(2, "is", THIS);
+                        case 'r': return checkKeyword(2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v': return checkKeyword(1, "ar", VAR);
+            case 'w': return checkKeyword(1, "hile", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    private TokenType checkKeyword(int offset, String rest, TokenType type) {
+        if(current - start != offset + rest.length()) return IDENTIFIER;
+        for(int i = 0; i < rest.length(); i++) {
+            if(buffer[start + offset + i] != rest.charAt(i)) return IDENTIFIER;
+        }
+        return type;
+    }
+
+    private TokenType number() {
         while (isDigit(peek())) advance();
         if(peek() == '.' && isDigit(peekNext()))  {
             advance();
             while (isDigit(peek())) advance();
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start,current)));
+        number = numberValue();
+        return NUMBER;
+    }
+
+    private double numberValue() {
+        // integers of up to 15 digits are exact as doubles, no need to go through a string
+        if(current - start <= 15) {
+            long value = 0;
+            int i = start;
+            while(i < current && buffer[i] != '.') {
+                value = value * 10 + (buffer[i++] - '0');
+            }
+            if(i == current) return value;
+        }
+        return Double.parseDouble(new String(buffer, start, current - start));
     }
 
-    private void string() {
+    private TokenType string() {
         while(peek() != '"' && !isAtEnd()) {
             if(peek() == '\n') line++;
             advance();
         }
         if(isAtEnd()) {
             Lox.error(line, "Unterminated String.");
-            return;
+            return null;
         }
 
         advance();
-        String val = source.substring(start + 1, current - 1);
-        addToken(STRING, val);
-    }
-
-    private void addToken(TokenType type) {
-        addToken(type, null);
-    }
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        return STRING;
     }
 
     private boolean isDigit(char c) {
@@ -187,21 +288,61 @@ public class Scanner {
     }
 
     private char advance() {
-        return source.charAt(current++);
+        return buffer[current++];
+    }
+    // consumes a character that belongs to no token, so the buffer doesn't have to keep it
+    private void skip() {
+        current++;
+        start = current;
     }
     private char peek() {
         if(isAtEnd()) return '\0';
-        return source.charAt(current);
+        return buffer[current];
     }
     private char peekNext() {
-        if(current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if(!available(1)) return '\0';
+        return buffer[current + 1];
     }
 
     private boolean match(char expected) {
         if(isAtEnd()) return false;
-        if(source.charAt(current) != expected) return false;
+        if(buffer[current] != expected) return false;
         current++;
         return true;
     }
+
+    // Whether the character `ahead` positions past current exists, reading more input when
+    // the buffer runs out. Reading may move the buffer contents, indexes are only valid after.
+    private boolean available(int ahead) {
+        while(current + ahead >= limit) {
+            if(exhausted || !fill()) return false;
+        }
+        return true;
+    }
+
+    // Moves the current lexeme to a fresh buffer and reads the next block of input behind it.
+    // The old buffer stays as it is for the tokens that refer to it. Returns false once the
+    // reader has nothing left.
+    private boolean fill() {
+        int kept = limit - start;
+        // a single lexeme may not fit the buffer size
+        char[] next = new char[Math.max(BUFFER_SIZE, kept * 2)];
+        System.arraycopy(buffer, start, next, 0, kept);
+        buffer = next;
+        current -= start;
+        start = 0;
+        limit = kept;
+
+        try {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if(read == -1) {
+                exhausted = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package com.interpreter.lox.lexer;
+
+// Cursor over tokens pulled one at a time from a TokenSource, keeping no more than two alive.
+class SourceCursor implements TokenCursor {
+    private final TokenSource source;
+    private Token next;
+    private Token previous;
+
+    SourceCursor(TokenSource source) {
+        this.source = source;
+        this.next = source.next();
+    }
+
+    @Override
+    public TokenType peekType() {
+        return next.type;
+    }
+
+    @Override
+    public Token peek() {
+        return next;
+    }
+
+    @Override
+    public void advance() {
+        previous = next;
+        next = source.next();
+    }
+
+    @Override
+    public TokenType previousType() {
+        return previous.type;
+    }
+
+    @Override
+    public Token previous() {
+        return previous;
+    }
+
+    @Override
+    public Object previousLiteral() {
+        return previous.literal;
+    }
+}
@@ -0,0 +1,76 @@
+package com.interpreter.lox.lexer;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+// An interned identifier: every occurrence of a name, in whatever program or REPL line and
+// on whatever thread it was scanned, is the same Symbol. Tables keyed by names compare keys
+// by identity and use the hash computed here once, instead of hashing and comparing text.
+// The table only holds symbols weakly. A name nothing refers to anymore is dropped, and it
+// gets a new Symbol if it is seen again, which no one can tell apart since the old one is gone.
+public final class Symbol {
+    private static final ConcurrentHashMap<String, Entry> table = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Symbol> collected = new ReferenceQueue<>();
+
+    public final String name;
+    private final int hash;
+
+    private Symbol(String name) {
+        this.name = name;
+        this.hash = name.hashCode();
+    }
+
+    public static Symbol of(String name) {
+        expunge();
+        while(true) {
+            Entry entry = table.get(name);
+            Symbol symbol = entry == null ? null : entry.get();
+            if(symbol != null) return symbol;
+
+            // an entry whose symbol was collected is replaced, unless another thread got there first
+            symbol = new Symbol(name);
+            Entry created = new Entry(symbol);
+            if(entry == null ? table.putIfAbsent(name, created) == null : table.replace(name, entry, created)) {
+                return symbol;
+            }
+        }
+    }
+
+    // drops the entries of collected symbols, unless the name was interned again meanwhile
+    private static void expunge() {
+        Entry entry;
+        while((entry = (Entry) collected.poll()) != null) {
+            table.remove(entry.name, entry);
+        }
+    }
+
+    // whether the symbol is the name spelled by the characters
+    boolean matches(char[] chars, int start, int length) {
+        if(name.length() != length) return false;
+        for(int i = 0; i < length; i++) {
+            if(name.charAt(i) != chars[start + i]) return false;
+        }
+        return true;
+    }
+
+    // equals is identity, which interning makes the same as comparing names
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static final class Entry extends WeakReference<Symbol> {
+        final String name;
+
+        Entry(Symbol symbol) {
+            super(symbol, collected);
+            this.name = symbol.name;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.interpreter.lox.lexer;
+
+// The symbols one Scanner has interned, looked up by the characters of an identifier so a
+// name that was seen before costs no string and no access to the shared table in Symbol.
+// Probing hashes the characters the way String.hashCode does, which is the hash a Symbol
+// carries. Used by the scanning thread only.
+final class Symbols {
+    private Symbol[] table = new Symbol[64];
+    private int size = 0;
+
+    Symbol intern(char[] chars, int start, int length) {
+        int hash = 0;
+        for(int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[start + i];
+        }
+
+        int mask = table.length - 1;
+        int index = spread(hash) & mask;
+        Symbol symbol;
+        while((symbol = table[index]) != null) {
+            if(symbol.hashCode() == hash && symbol.matches(chars, start, length)) return symbol;
+            index = (index + 1) & mask;
+        }
+
+        symbol = Symbol.of(new String(chars, start, length));
+        table[index] = symbol;
+        if(++size * 2 > table.length) grow();
+        return symbol;
+    }
+
+    private void grow() {
+        Symbol[] old = table;
+        table = new Symbol[old.length * 2];
+        int mask = table.length - 1;
+        for(Symbol symbol: old) {
+            if(symbol == null) continue;
+            int index = spread(symbol.hashCode()) & mask;
+            while(table[index] != null) index = (index + 1) & mask;
+            table[index] = symbol;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -2,21 +2,68 @@ package com.interpreter.lox.lexer;
 
 import com.interpreter.lox.lexer.TokenType;
 
+import static com.interpreter.lox.lexer.TokenType.IDENTIFIER;
+
 public class Token {
     public final TokenType type;
-    public final String lexeme;
     public final Object literal;
     public final int line;
+    // Identifiers, numbers and strings point into the scanner's buffer and only build
+    // their lexeme when it is asked for; every other type has a fixed spelling.
+    private final char[] source;
+    private final int start;
+    private final int length;
+    private String lexeme;
+    private Symbol symbol;
 
     public Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.source = null;
+        this.start = 0;
+        this.length = lexeme.length();
+    }
+
+    // an identifier the Scanner interned
+    Token(Symbol symbol, int line) {
+        this(IDENTIFIER, symbol.name, null, line);
+        this.symbol = symbol;
+    }
+
+    Token(TokenType type, char[] source, int start, int length, Object literal, int line) {
+        this.type = type;
+        this.source = source;
+        this.start = start;
+        this.length = length;
+        this.literal = literal;
+        this.line = line;
+    }
+
+    public String lexeme() {
+        // racing threads at worst build equal strings
+        String text = lexeme;
+        if(text == null) {
+            text = new String(source, start, length);
+            lexeme = text;
+        }
+        return text;
+    }
+
+    // The interned name of an identifier. Tokens that weren't scanned, like the ones of a
+    // compiled cache entry, intern it on first use.
+    public Symbol symbol() {
+        Symbol name = symbol;
+        if(name == null) {
+            name = Symbol.of(lexeme());
+            symbol = name;
+        }
+        return name;
     }
 
     @Override
     public String toString() {
-        return type + " " + lexeme + " " + literal;
+        return type + " " + lexeme() + " " + literal;
     }
 }
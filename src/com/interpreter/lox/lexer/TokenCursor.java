@@ -0,0 +1,28 @@
+package com.interpreter.lox.lexer;
+
+// The Parser's view of its input: one token of lookahead and the token just consumed.
+// Types can be inspected without building Token objects, which implementations backed by
+// compact storage only create when the Parser keeps or reports a token.
+public interface TokenCursor {
+    TokenType peekType();
+    Token peek();
+    // moves past the lookahead token, never called once it is EOF
+    void advance();
+    TokenType previousType();
+    Token previous();
+    Object previousLiteral();
+
+    // an independent cursor starting at the lookahead, null when the tokens can't be read twice
+    default TokenCursor fork() {
+        return null;
+    }
+
+    // a cursor that ends after the next `count` tokens
+    default TokenCursor limit(int count) {
+        return new LimitedCursor(this, count);
+    }
+
+    static TokenCursor of(TokenSource source) {
+        return new SourceCursor(source);
+    }
+}
@@ -0,0 +1,7 @@
+package com.interpreter.lox.lexer;
+
+// Hands out tokens one at a time, so the Parser can consume them while they are scanned.
+// After the input is exhausted every call returns an EOF token.
+public interface TokenSource {
+    Token next();
+}
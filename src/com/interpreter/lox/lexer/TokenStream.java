@@ -0,0 +1,143 @@
+package com.interpreter.lox.lexer;
+
+import java.util.Arrays;
+
+// Tokens of an in-memory source stored column-wise: type, lexeme offset, lexeme length and
+// line of every token in parallel primitive arrays, with the values of number literals and the
+// symbols of identifiers in side tables. About 13 bytes per token instead of a Token object, its boxed literal and a list
+// slot. The Parser reads it through cursor(); Tokens are only created for the ones it keeps
+// in the tree (names, operators) or reports errors on.
+public class TokenStream {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final char[] source;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private double[] numbers = new double[16];
+    private Symbol[] symbols = new Symbol[16];
+    private int size = 0;
+    private int numberCount = 0;
+    private int symbolCount = 0;
+
+    TokenStream(char[] source) {
+        this.source = source;
+        // Lox code rarely has more than a token every three characters
+        int capacity = Math.max(16, source.length / 3);
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    public static TokenStream scan(String source) {
+        return new Scanner(source).scanStream();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenCursor cursor() {
+        return new Cursor();
+    }
+
+    void add(TokenType type, int start, int length, int line, double number, Symbol symbol) {
+        if(size == types.length) {
+            int capacity = size + size / 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        size++;
+
+        if(type == TokenType.NUMBER) {
+            if(numberCount == numbers.length) numbers = Arrays.copyOf(numbers, numberCount * 2);
+            numbers[numberCount++] = number;
+        } else if(type == TokenType.IDENTIFIER) {
+            if(symbolCount == symbols.length) symbols = Arrays.copyOf(symbols, symbolCount * 2);
+            symbols[symbolCount++] = symbol;
+        }
+    }
+
+    // drops the spare capacity once scanning is done
+    void trim() {
+        types = Arrays.copyOf(types, size);
+        starts = Arrays.copyOf(starts, size);
+        lengths = Arrays.copyOf(lengths, size);
+        lines = Arrays.copyOf(lines, size);
+        numbers = Arrays.copyOf(numbers, numberCount);
+        symbols = Arrays.copyOf(symbols, symbolCount);
+    }
+
+    // `number` and `symbol` are side table indexes, only meaningful for tokens of their type
+    private Token token(int index, int number, int symbol) {
+        TokenType type = TYPES[types[index]];
+        if(type.spelling != null) return new Token(type, type.spelling, null, lines[index]);
+        if(type == TokenType.IDENTIFIER) return new Token(symbols[symbol], lines[index]);
+        return new Token(type, source, starts[index], lengths[index], literal(index, number), lines[index]);
+    }
+
+    private Object literal(int index, int number) {
+        switch (TYPES[types[index]]) {
+            case NUMBER: return numbers[number];
+            case STRING: return new String(source, starts[index] + 1, lengths[index] - 2);
+        }
+        return null;
+    }
+
+    // Reads the stream front to back. Side table entries are in token order, so the cursor
+    // finds a number's or identifier's entry by counting the ones of its type it has passed.
+    private class Cursor implements TokenCursor {
+        private int position = 0;
+        private int numbersBefore = 0;
+        private int symbolsBefore = 0;
+
+        @Override
+        public TokenType peekType() {
+            return TYPES[types[position]];
+        }
+
+        @Override
+        public Token peek() {
+            return token(position, numbersBefore, symbolsBefore);
+        }
+
+        @Override
+        public void advance() {
+            if(types[position] == TokenType.NUMBER.ordinal()) numbersBefore++;
+            else if(types[position] == TokenType.IDENTIFIER.ordinal()) symbolsBefore++;
+            position++;
+        }
+
+        @Override
+        public TokenType previousType() {
+            return TYPES[types[position - 1]];
+        }
+
+        @Override
+        public Token previous() {
+            return token(position - 1, numbersBefore - 1, symbolsBefore - 1);
+        }
+
+        @Override
+        public Object previousLiteral() {
+            return literal(position - 1, numbersBefore - 1);
+        }
+
+        @Override
+        public TokenCursor fork() {
+            Cursor fork = new Cursor();
+            fork.position = position;
+            fork.numbersBefore = numbersBefore;
+            fork.symbolsBefore = symbolsBefore;
+            return fork;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.interpreter.lox.optimizer;
+
+import com.interpreter.lox.interpreter.Interpreter;
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.parser.Expr;
+import com.interpreter.lox.parser.LazyBody;
+import com.interpreter.lox.parser.Stmt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.interpreter.lox.lexer.TokenType.*;
+
+// Simplifies a resolved program before it is executed:
+// constant folding (including string literal concatenation), grouping removal,
+// algebraic identities on numeric subexpressions, pruning of branches with constant
+// conditions and removal of statements without effect.
+// Runs after the Resolver, so rebuilt nodes carry over their resolver annotations and
+// no scope is ever added or removed around surviving code.
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    public List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for(Stmt statement: statements) {
+            Stmt stmt = optimize(statement);
+            // null means the statement has no effect and can be dropped
+            if(stmt != null) optimized.add(stmt);
+        }
+        return optimized;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Where the grammar needs a statement, a removed one becomes an empty block.
+    private Stmt optimizeRequired(Stmt stmt) {
+        Stmt optimized = optimize(stmt);
+        if(optimized != null) return optimized;
+        return new Stmt.Block(Collections.emptyList());
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr.Assign assign = new Expr.Assign(expr.name, optimize(expr.value));
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if(left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Object folded = fold(expr.operator, ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if(folded != null) return new Expr.Literal(folded);
+        }
+
+        // (x + "a") + "b"  ->  x + "ab", both fail the same way when x isn't a string
+        if(expr.operator.type == PLUS && isString(right) && left instanceof Expr.Binary) {
+            Expr.Binary inner = (Expr.Binary) left;
+            if(inner.operator.type == PLUS && isString(inner.right)) {
+                String joined = (String) ((Expr.Literal) inner.right).value + ((Expr.Literal) right).value;
+                return new Expr.Binary(inner.left, inner.operator, new Expr.Literal(joined));
+            }
+        }
+
+        // identities that hold for every double, including NaN, infinities and -0
+        switch (expr.operator.type) {
+            case STAR:
+                if(isNumber(right, 1) && isNumeric(left)) return left;
+                if(isNumber(left, 1) && isNumeric(right)) return right;
+                break;
+            case SLASH:
+                if(isNumber(right, 1) && isNumeric(left)) return left;
+                break;
+            case MINUS:
+                if(isNumber(right, 0) && isNumeric(left)) return left;
+                break;
+        }
+
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for(Expr argument: expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+        return new Expr.Call(optimize(expr.callee), expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        // the tree already encodes precedence, groupings only cost a visit at runtime
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if(left instanceof Expr.Literal) {
+            boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+            if(expr.operator.type == OR) return truthy ? left : right;
+            return truthy ? right : left;
+        }
+
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if(right instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) right).value;
+            switch (expr.operator.type) {
+                case BANG:
+                    return new Expr.Literal(!Interpreter.isTruthy(value));
+                case MINUS:
+                    if(value instanceof Double) return new Expr.Literal(-(double) value);
+                    break;
+            }
+        }
+
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        Stmt.Block block = new Stmt.Block(optimize(stmt.statements));
+        block.locals = stmt.locals;
+        return block;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        // reading a global can still fail, reading a literal or a resolved local can't
+        if(expression instanceof Expr.Literal
+                || (expression instanceof Expr.Variable && ((Expr.Variable) expression).depth != -1)) {
+            return null;
+        }
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        if(stmt.body instanceof LazyBody) {
+            // optimized after it is parsed and resolved, the declaration keeps its annotations
+            ((LazyBody) stmt.body).then(this::optimize);
+            return stmt;
+        }
+        Stmt.Function function = new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body));
+        function.slot = stmt.slot;
+        function.locals = stmt.locals;
+        return function;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+
+        if(condition instanceof Expr.Literal) {
+            if(Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+                return optimize(stmt.thenBranch);
+            }
+            return stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        }
+
+        Stmt elseBranch = stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        return new Stmt.If(condition, optimizeRequired(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public Stmt visitImportStmt(Stmt.Import stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        Expr value = stmt.value != null ? optimize(stmt.value) : null;
+        return new Stmt.Return(stmt.keyword, value);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = stmt.initializer != null ? optimize(stmt.initializer) : null;
+        Stmt.Var var = new Stmt.Var(stmt.name, initializer);
+        var.slot = stmt.slot;
+        return var;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+
+        if(condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+            return null;
+        }
+
+        return new Stmt.While(condition, optimizeRequired(stmt.body));
+    }
+
+    // Result of applying the operator to two constants, or null when it must stay a
+    // runtime operation (mismatched types raise their error at runtime, nil can't be
+    // represented as a folded literal).
+    private static Object fold(Token operator, Object left, Object right) {
+        switch (operator.type) {
+            case EQUAL_EQUAL:
+                return Interpreter.isEqual(left, right);
+            case BANG_EQUAL:
+                return !Interpreter.isEqual(left, right);
+            case PLUS:
+                if(left instanceof String && right instanceof String) return (String) left + right;
+                break;
+        }
+
+        if(!(left instanceof Double && right instanceof Double)) return null;
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator.type) {
+            case PLUS: return a + b;
+            case MINUS: return a - b;
+            case STAR: return a * b;
+            case SLASH: return a / b;
+            case GREATER: return a > b;
+            case GREATER_EQUAL: return a >= b;
+            case LESS: return a < b;
+            case LESS_EQUAL: return a <= b;
+        }
+        return null;
+    }
+
+    private static boolean isString(Expr expr) {
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof String;
+    }
+
+    // Double.equals tells 0 and -0 apart, x - (-0) is not an identity
+    private static boolean isNumber(Expr expr, double value) {
+        return expr instanceof Expr.Literal && Double.valueOf(value).equals(((Expr.Literal) expr).value);
+    }
+
+    // Whether the expression always evaluates to a number (or fails before producing a value).
+    private static boolean isNumeric(Expr expr) {
+        if(expr instanceof Expr.Literal) return ((Expr.Literal) expr).value instanceof Double;
+        if(expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.type == MINUS;
+        if(expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return true;
+                case PLUS:
+                    return isNumeric(binary.left) && isNumeric(binary.right);
+            }
+        }
+        return false;
+    }
+}
@@ -16,13 +16,15 @@ public abstract class Expr {
         R visitVariableExpr(Variable expr);
     }
     public static class Assign extends Expr {
-        Assign(Token name, Expr value) {
+        public Assign(Token name, Expr value) {
             this.name = name ; 
             this.value = value ; 
         }
 
         public final Token name;
         public final  Expr value;
+        public int depth = -1;
+        public int slot = -1;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -30,7 +32,7 @@ public abstract class Expr {
         }
     }
     public static class Binary extends Expr {
-        Binary(Expr left, Token operator, Expr right) {
+        public Binary(Expr left, Token operator, Expr right) {
             this.left = left ; 
             this.operator = operator ; 
             this.right = right ; 
@@ -39,6 +41,7 @@ public abstract class Expr {
         public final Expr left;
         public final  Token operator;
         public final  Expr right;
+        public int specialization = 0;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -46,7 +49,7 @@ public abstract class Expr {
         }
     }
     public static class Call extends Expr {
-        Call(Expr callee, Token paren, List<Expr> arguments) {
+        public Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee = callee ; 
             this.paren = paren ; 
             this.arguments = arguments ; 
@@ -55,6 +58,7 @@ public abstract class Expr {
         public final Expr callee;
         public final  Token paren;
         public final  List<Expr> arguments;
+        public Stmt.Function checked = null;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -62,7 +66,7 @@ public abstract class Expr {
         }
     }
     public static class Grouping extends Expr {
-        Grouping(Expr expression) {
+        public Grouping(Expr expression) {
             this.expression = expression ; 
         }
 
@@ -74,7 +78,7 @@ public abstract class Expr {
         }
     }
     public static class Literal extends Expr {
-        Literal(Object value) {
+        public Literal(Object value) {
             this.value = value ; 
         }
 
@@ -86,7 +90,7 @@ public abstract class Expr {
         }
     }
     public static class Logical extends Expr {
-        Logical(Expr left, Token operator, Expr right) {
+        public Logical(Expr left, Token operator, Expr right) {
             this.left = left ; 
             this.operator = operator ; 
             this.right = right ; 
@@ -95,6 +99,7 @@ public abstract class Expr {
         public final Expr left;
         public final  Token operator;
         public final  Expr right;
+        public int specialization = 0;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -102,13 +107,14 @@ public abstract class Expr {
         }
     }
     public static class Unary extends Expr {
-        Unary(Token operator, Expr right) {
+        public Unary(Token operator, Expr right) {
             this.operator = operator ; 
             this.right = right ; 
         }
 
         public final Token operator;
         public final  Expr right;
+        public int specialization = 0;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -116,11 +122,13 @@ public abstract class Expr {
         }
     }
     public static class Variable extends Expr {
-        Variable(Token name) {
+        public Variable(Token name) {
             this.name = name ; 
         }
 
         public final Token name;
+        public int depth = -1;
+        public int slot = -1;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
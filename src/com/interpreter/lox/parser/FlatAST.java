@@ -0,0 +1,843 @@
+package com.interpreter.lox.parser;
+
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.lexer.TokenType;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Expr/Stmt trees encoded in a single int[] arena. A node is the offset of its kind,
+// followed by its fields: child nodes as offsets (-1 for none), tokens as a lexeme index and
+// a packed line and type, literals as an index into a side table, lists as the offset of a
+// block holding their length and elements, and int annotations in place.
+public class FlatAST {
+    public static final int ASSIGN_EXPR = 0;
+    public static final int BINARY_EXPR = 1;
+    public static final int CALL_EXPR = 2;
+    public static final int GROUPING_EXPR = 3;
+    public static final int LITERAL_EXPR = 4;
+    public static final int LOGICAL_EXPR = 5;
+    public static final int UNARY_EXPR = 6;
+    public static final int VARIABLE_EXPR = 7;
+    public static final int BLOCK_STMT = 8;
+    public static final int EXPRESSION_STMT = 9;
+    public static final int FUNCTION_STMT = 10;
+    public static final int IF_STMT = 11;
+    public static final int IMPORT_STMT = 12;
+    public static final int PRINT_STMT = 13;
+    public static final int RETURN_STMT = 14;
+    public static final int VAR_STMT = 15;
+    public static final int WHILE_STMT = 16;
+
+    // changes whenever the node layout does, so serialized trees of another layout are rejected
+    public static final int FORMAT = 1693646275;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final int TYPE_BITS = 6;
+
+    private int[] nodes = new int[256];
+    private int size = 0;
+    // lexemes of the tokens, each distinct one stored once
+    private String[] strings = new String[64];
+    private int stringCount = 0;
+    private Object[] literals = new Object[64];
+    private int literalCount = 0;
+    // list block of the top-level statements
+    private int program;
+
+    public interface Visitor<R> {
+        R visitAssignExpr(int node);
+        R visitBinaryExpr(int node);
+        R visitCallExpr(int node);
+        R visitGroupingExpr(int node);
+        R visitLiteralExpr(int node);
+        R visitLogicalExpr(int node);
+        R visitUnaryExpr(int node);
+        R visitVariableExpr(int node);
+        R visitBlockStmt(int node);
+        R visitExpressionStmt(int node);
+        R visitFunctionStmt(int node);
+        R visitIfStmt(int node);
+        R visitImportStmt(int node);
+        R visitPrintStmt(int node);
+        R visitReturnStmt(int node);
+        R visitVarStmt(int node);
+        R visitWhileStmt(int node);
+    }
+
+    public <R> R accept(int node, Visitor<R> visitor) {
+        switch (nodes[node]) {
+            case ASSIGN_EXPR: return visitor.visitAssignExpr(node);
+            case BINARY_EXPR: return visitor.visitBinaryExpr(node);
+            case CALL_EXPR: return visitor.visitCallExpr(node);
+            case GROUPING_EXPR: return visitor.visitGroupingExpr(node);
+            case LITERAL_EXPR: return visitor.visitLiteralExpr(node);
+            case LOGICAL_EXPR: return visitor.visitLogicalExpr(node);
+            case UNARY_EXPR: return visitor.visitUnaryExpr(node);
+            case VARIABLE_EXPR: return visitor.visitVariableExpr(node);
+            case BLOCK_STMT: return visitor.visitBlockStmt(node);
+            case EXPRESSION_STMT: return visitor.visitExpressionStmt(node);
+            case FUNCTION_STMT: return visitor.visitFunctionStmt(node);
+            case IF_STMT: return visitor.visitIfStmt(node);
+            case IMPORT_STMT: return visitor.visitImportStmt(node);
+            case PRINT_STMT: return visitor.visitPrintStmt(node);
+            case RETURN_STMT: return visitor.visitReturnStmt(node);
+            case VAR_STMT: return visitor.visitVarStmt(node);
+            case WHILE_STMT: return visitor.visitWhileStmt(node);
+        }
+        throw new IllegalStateException("Unknown node kind " + nodes[node] + " at " + node);
+    }
+
+    public int kind(int node) {
+        return nodes[node];
+    }
+
+    public int statementCount() {
+        return nodes[program];
+    }
+
+    public int statement(int index) {
+        return nodes[program + 1 + index];
+    }
+
+    // Assign Expr
+    public Token assignName(int node) {
+        return token(node + 1);
+    }
+    public TokenType assignNameType(int node) {
+        return TOKEN_TYPES[nodes[node + 1 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int assignValue(int node) {
+        return nodes[node + 3];
+    }
+    public int assignDepth(int node) {
+        return nodes[node + 4];
+    }
+    public void setAssignDepth(int node, int value) {
+        nodes[node + 4] = value;
+    }
+    public int assignSlot(int node) {
+        return nodes[node + 5];
+    }
+    public void setAssignSlot(int node, int value) {
+        nodes[node + 5] = value;
+    }
+
+    // Binary Expr
+    public int binaryLeft(int node) {
+        return nodes[node + 1];
+    }
+    public Token binaryOperator(int node) {
+        return token(node + 2);
+    }
+    public TokenType binaryOperatorType(int node) {
+        return TOKEN_TYPES[nodes[node + 2 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int binaryRight(int node) {
+        return nodes[node + 4];
+    }
+    public int binarySpecialization(int node) {
+        return nodes[node + 5];
+    }
+    public void setBinarySpecialization(int node, int value) {
+        nodes[node + 5] = value;
+    }
+
+    // Call Expr
+    public int callCallee(int node) {
+        return nodes[node + 1];
+    }
+    public Token callParen(int node) {
+        return token(node + 2);
+    }
+    public TokenType callParenType(int node) {
+        return TOKEN_TYPES[nodes[node + 2 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int callArgumentsSize(int node) {
+        return nodes[nodes[node + 4]];
+    }
+    public int callArguments(int node, int index) {
+        return nodes[nodes[node + 4] + 1 + index];
+    }
+
+    // Grouping Expr
+    public int groupingExpression(int node) {
+        return nodes[node + 1];
+    }
+
+    // Literal Expr
+    public Object literalValue(int node) {
+        int literal = nodes[node + 1];
+        return literal == -1 ? null : literals[literal];
+    }
+
+    // Logical Expr
+    public int logicalLeft(int node) {
+        return nodes[node + 1];
+    }
+    public Token logicalOperator(int node) {
+        return token(node + 2);
+    }
+    public TokenType logicalOperatorType(int node) {
+        return TOKEN_TYPES[nodes[node + 2 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int logicalRight(int node) {
+        return nodes[node + 4];
+    }
+    public int logicalSpecialization(int node) {
+        return nodes[node + 5];
+    }
+    public void setLogicalSpecialization(int node, int value) {
+        nodes[node + 5] = value;
+    }
+
+    // Unary Expr
+    public Token unaryOperator(int node) {
+        return token(node + 1);
+    }
+    public TokenType unaryOperatorType(int node) {
+        return TOKEN_TYPES[nodes[node + 1 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int unaryRight(int node) {
+        return nodes[node + 3];
+    }
+    public int unarySpecialization(int node) {
+        return nodes[node + 4];
+    }
+    public void setUnarySpecialization(int node, int value) {
+        nodes[node + 4] = value;
+    }
+
+    // Variable Expr
+    public Token variableName(int node) {
+        return token(node + 1);
+    }
+    public TokenType variableNameType(int node) {
+        return TOKEN_TYPES[nodes[node + 1 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int variableDepth(int node) {
+        return nodes[node + 3];
+    }
+    public void setVariableDepth(int node, int value) {
+        nodes[node + 3] = value;
+    }
+    public int variableSlot(int node) {
+        return nodes[node + 4];
+    }
+    public void setVariableSlot(int node, int value) {
+        nodes[node + 4] = value;
+    }
+
+    // Block Stmt
+    public int blockStatementsSize(int node) {
+        return nodes[nodes[node + 1]];
+    }
+    public int blockStatements(int node, int index) {
+        return nodes[nodes[node + 1] + 1 + index];
+    }
+    public int blockLocals(int node) {
+        return nodes[node + 2];
+    }
+    public void setBlockLocals(int node, int value) {
+        nodes[node + 2] = value;
+    }
+
+    // Expression Stmt
+    public int expressionExpression(int node) {
+        return nodes[node + 1];
+    }
+
+    // Function Stmt
+    public Token functionName(int node) {
+        return token(node + 1);
+    }
+    public TokenType functionNameType(int node) {
+        return TOKEN_TYPES[nodes[node + 1 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int functionParamsSize(int node) {
+        return nodes[nodes[node + 3]];
+    }
+    public Token functionParams(int node, int index) {
+        return token(nodes[node + 3] + 1 + 2 * index);
+    }
+    public int functionBodySize(int node) {
+        return nodes[nodes[node + 4]];
+    }
+    public int functionBody(int node, int index) {
+        return nodes[nodes[node + 4] + 1 + index];
+    }
+    public int functionSlot(int node) {
+        return nodes[node + 5];
+    }
+    public void setFunctionSlot(int node, int value) {
+        nodes[node + 5] = value;
+    }
+    public int functionLocals(int node) {
+        return nodes[node + 6];
+    }
+    public void setFunctionLocals(int node, int value) {
+        nodes[node + 6] = value;
+    }
+
+    // If Stmt
+    public int ifCondition(int node) {
+        return nodes[node + 1];
+    }
+    public int ifThenBranch(int node) {
+        return nodes[node + 2];
+    }
+    public int ifElseBranch(int node) {
+        return nodes[node + 3];
+    }
+
+    // Import Stmt
+    public Token importKeyword(int node) {
+        return token(node + 1);
+    }
+    public TokenType importKeywordType(int node) {
+        return TOKEN_TYPES[nodes[node + 1 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public Token importPath(int node) {
+        return token(node + 3);
+    }
+    public TokenType importPathType(int node) {
+        return TOKEN_TYPES[nodes[node + 3 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+
+    // Print Stmt
+    public int printExpression(int node) {
+        return nodes[node + 1];
+    }
+
+    // Return Stmt
+    public Token returnKeyword(int node) {
+        return token(node + 1);
+    }
+    public TokenType returnKeywordType(int node) {
+        return TOKEN_TYPES[nodes[node + 1 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int returnValue(int node) {
+        return nodes[node + 3];
+    }
+
+    // Var Stmt
+    public Token varName(int node) {
+        return token(node + 1);
+    }
+    public TokenType varNameType(int node) {
+        return TOKEN_TYPES[nodes[node + 1 + 1] & ((1 << TYPE_BITS) - 1)];
+    }
+    public int varInitializer(int node) {
+        return nodes[node + 3];
+    }
+    public int varSlot(int node) {
+        return nodes[node + 4];
+    }
+    public void setVarSlot(int node, int value) {
+        nodes[node + 4] = value;
+    }
+
+    // While Stmt
+    public int whileCondition(int node) {
+        return nodes[node + 1];
+    }
+    public int whileBody(int node) {
+        return nodes[node + 2];
+    }
+
+    private Token token(int at) {
+        int packed = nodes[at + 1];
+        return new Token(TOKEN_TYPES[packed & ((1 << TYPE_BITS) - 1)], strings[nodes[at]], null, packed >>> TYPE_BITS);
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(FORMAT);
+        data.writeInt(program);
+        data.writeInt(size);
+        ByteBuffer buffer = ByteBuffer.allocate(size * Integer.BYTES);
+        buffer.asIntBuffer().put(nodes, 0, size);
+        data.write(buffer.array());
+        data.writeInt(stringCount);
+        for(int i = 0; i < stringCount; i++) {
+            writeString(data, strings[i]);
+        }
+        data.writeInt(literalCount);
+        for(int i = 0; i < literalCount; i++) {
+            Object literal = literals[i];
+            if(literal instanceof Double) {
+                data.writeByte('D');
+                data.writeDouble((double) literal);
+            } else if(literal instanceof Boolean) {
+                data.writeByte('B');
+                data.writeBoolean((boolean) literal);
+            } else if(literal instanceof String) {
+                data.writeByte('S');
+                writeString(data, (String) literal);
+            } else {
+                throw new IOException("Literal can't be serialized: " + literal);
+            }
+        }
+        data.flush();
+    }
+
+    public static FlatAST read(ByteBuffer in) throws IOException {
+        if(in.getInt() != FORMAT) throw new IOException("Unsupported tree format");
+        FlatAST ast = new FlatAST();
+        ast.program = in.getInt();
+        ast.size = in.getInt();
+        ast.nodes = new int[ast.size];
+        in.asIntBuffer().get(ast.nodes);
+        in.position(in.position() + ast.size * Integer.BYTES);
+        ast.stringCount = in.getInt();
+        ast.strings = new String[ast.stringCount];
+        for(int i = 0; i < ast.stringCount; i++) {
+            ast.strings[i] = readString(in);
+        }
+        ast.literalCount = in.getInt();
+        ast.literals = new Object[ast.literalCount];
+        for(int i = 0; i < ast.literalCount; i++) {
+            switch (in.get()) {
+                case 'D': ast.literals[i] = in.getDouble(); break;
+                case 'B': ast.literals[i] = in.get() != 0; break;
+                case 'S': ast.literals[i] = readString(in); break;
+                default: throw new IOException("Unknown literal tag");
+            }
+        }
+        return ast;
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Rebuilds the Stmt/Expr tree, annotations included, for the engines walking objects.
+    public List<Stmt> inflate() {
+        return new Inflater().stmtList(program);
+    }
+
+    private class Inflater implements Visitor<Object> {
+
+        @Override
+        public Object visitAssignExpr(int node) {
+            Expr.Assign expr = new Expr.Assign(assignName(node), inflateExpr(assignValue(node)));
+            expr.depth = assignDepth(node);
+            expr.slot = assignSlot(node);
+            return expr;
+        }
+
+        @Override
+        public Object visitBinaryExpr(int node) {
+            Expr.Binary expr = new Expr.Binary(inflateExpr(binaryLeft(node)), binaryOperator(node), inflateExpr(binaryRight(node)));
+            expr.specialization = binarySpecialization(node);
+            return expr;
+        }
+
+        @Override
+        public Object visitCallExpr(int node) {
+            Expr.Call expr = new Expr.Call(inflateExpr(callCallee(node)), callParen(node), exprList(nodes[node + 4]));
+            return expr;
+        }
+
+        @Override
+        public Object visitGroupingExpr(int node) {
+            Expr.Grouping expr = new Expr.Grouping(inflateExpr(groupingExpression(node)));
+            return expr;
+        }
+
+        @Override
+        public Object visitLiteralExpr(int node) {
+            Expr.Literal expr = new Expr.Literal(literalValue(node));
+            return expr;
+        }
+
+        @Override
+        public Object visitLogicalExpr(int node) {
+            Expr.Logical expr = new Expr.Logical(inflateExpr(logicalLeft(node)), logicalOperator(node), inflateExpr(logicalRight(node)));
+            expr.specialization = logicalSpecialization(node);
+            return expr;
+        }
+
+        @Override
+        public Object visitUnaryExpr(int node) {
+            Expr.Unary expr = new Expr.Unary(unaryOperator(node), inflateExpr(unaryRight(node)));
+            expr.specialization = unarySpecialization(node);
+            return expr;
+        }
+
+        @Override
+        public Object visitVariableExpr(int node) {
+            Expr.Variable expr = new Expr.Variable(variableName(node));
+            expr.depth = variableDepth(node);
+            expr.slot = variableSlot(node);
+            return expr;
+        }
+
+        @Override
+        public Object visitBlockStmt(int node) {
+            Stmt.Block stmt = new Stmt.Block(stmtList(nodes[node + 1]));
+            stmt.locals = blockLocals(node);
+            return stmt;
+        }
+
+        @Override
+        public Object visitExpressionStmt(int node) {
+            Stmt.Expression stmt = new Stmt.Expression(inflateExpr(expressionExpression(node)));
+            return stmt;
+        }
+
+        @Override
+        public Object visitFunctionStmt(int node) {
+            Stmt.Function stmt = new Stmt.Function(functionName(node), tokenList(nodes[node + 3]), stmtList(nodes[node + 4]));
+            stmt.slot = functionSlot(node);
+            stmt.locals = functionLocals(node);
+            return stmt;
+        }
+
+        @Override
+        public Object visitIfStmt(int node) {
+            Stmt.If stmt = new Stmt.If(inflateExpr(ifCondition(node)), inflateStmt(ifThenBranch(node)), inflateStmt(ifElseBranch(node)));
+            return stmt;
+        }
+
+        @Override
+        public Object visitImportStmt(int node) {
+            Stmt.Import stmt = new Stmt.Import(importKeyword(node), importPath(node));
+            return stmt;
+        }
+
+        @Override
+        public Object visitPrintStmt(int node) {
+            Stmt.Print stmt = new Stmt.Print(inflateExpr(printExpression(node)));
+            return stmt;
+        }
+
+        @Override
+        public Object visitReturnStmt(int node) {
+            Stmt.Return stmt = new Stmt.Return(returnKeyword(node), inflateExpr(returnValue(node)));
+            return stmt;
+        }
+
+        @Override
+        public Object visitVarStmt(int node) {
+            Stmt.Var stmt = new Stmt.Var(varName(node), inflateExpr(varInitializer(node)));
+            stmt.slot = varSlot(node);
+            return stmt;
+        }
+
+        @Override
+        public Object visitWhileStmt(int node) {
+            Stmt.While stmt = new Stmt.While(inflateExpr(whileCondition(node)), inflateStmt(whileBody(node)));
+            return stmt;
+        }
+
+        private Expr inflateExpr(int node) {
+            return node == -1 ? null : (Expr) accept(node, this);
+        }
+
+        private Stmt inflateStmt(int node) {
+            return node == -1 ? null : (Stmt) accept(node, this);
+        }
+
+        private List<Expr> exprList(int block) {
+            List<Expr> exprs = new ArrayList<>(nodes[block]);
+            for(int i = 0; i < nodes[block]; i++) exprs.add(inflateExpr(nodes[block + 1 + i]));
+            return exprs;
+        }
+
+        private List<Stmt> stmtList(int block) {
+            List<Stmt> stmts = new ArrayList<>(nodes[block]);
+            for(int i = 0; i < nodes[block]; i++) stmts.add(inflateStmt(nodes[block + 1 + i]));
+            return stmts;
+        }
+
+        private List<Token> tokenList(int block) {
+            List<Token> tokens = new ArrayList<>(nodes[block]);
+            for(int i = 0; i < nodes[block]; i++) tokens.add(token(block + 1 + 2 * i));
+            return tokens;
+        }
+    }
+
+    public static FlatAST flatten(List<Stmt> statements) {
+        FlatAST ast = new FlatAST();
+        Flattener flattener = ast.new Flattener();
+        ast.program = flattener.stmtList(statements);
+        ast.nodes = Arrays.copyOf(ast.nodes, ast.size);
+        ast.strings = Arrays.copyOf(ast.strings, ast.stringCount);
+        ast.literals = Arrays.copyOf(ast.literals, ast.literalCount);
+        return ast;
+    }
+
+    private int allocate(int slots) {
+        if(size + slots > nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, size + slots));
+        }
+        int node = size;
+        size += slots;
+        return node;
+    }
+
+    // Builds the arena bottom-up: children are stored before the node referring to them.
+    private class Flattener implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final Map<Object, Integer> literalIndex = new HashMap<>();
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            int value = node(expr.value);
+            int node = allocate(6);
+            nodes[node] = ASSIGN_EXPR;
+            putToken(node + 1, expr.name);
+            nodes[node + 3] = value;
+            nodes[node + 4] = expr.depth;
+            nodes[node + 5] = expr.slot;
+            return node;
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            int left = node(expr.left);
+            int right = node(expr.right);
+            int node = allocate(6);
+            nodes[node] = BINARY_EXPR;
+            nodes[node + 1] = left;
+            putToken(node + 2, expr.operator);
+            nodes[node + 4] = right;
+            nodes[node + 5] = expr.specialization;
+            return node;
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            int callee = node(expr.callee);
+            int arguments = exprList(expr.arguments);
+            int node = allocate(5);
+            nodes[node] = CALL_EXPR;
+            nodes[node + 1] = callee;
+            putToken(node + 2, expr.paren);
+            nodes[node + 4] = arguments;
+            return node;
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            int expression = node(expr.expression);
+            int node = allocate(2);
+            nodes[node] = GROUPING_EXPR;
+            nodes[node + 1] = expression;
+            return node;
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            int node = allocate(2);
+            nodes[node] = LITERAL_EXPR;
+            nodes[node + 1] = literal(expr.value);
+            return node;
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            int left = node(expr.left);
+            int right = node(expr.right);
+            int node = allocate(6);
+            nodes[node] = LOGICAL_EXPR;
+            nodes[node + 1] = left;
+            putToken(node + 2, expr.operator);
+            nodes[node + 4] = right;
+            nodes[node + 5] = expr.specialization;
+            return node;
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            int right = node(expr.right);
+            int node = allocate(5);
+            nodes[node] = UNARY_EXPR;
+            putToken(node + 1, expr.operator);
+            nodes[node + 3] = right;
+            nodes[node + 4] = expr.specialization;
+            return node;
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            int node = allocate(5);
+            nodes[node] = VARIABLE_EXPR;
+            putToken(node + 1, expr.name);
+            nodes[node + 3] = expr.depth;
+            nodes[node + 4] = expr.slot;
+            return node;
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            int statements = stmtList(stmt.statements);
+            int node = allocate(3);
+            nodes[node] = BLOCK_STMT;
+            nodes[node + 1] = statements;
+            nodes[node + 2] = stmt.locals;
+            return node;
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            int expression = node(stmt.expression);
+            int node = allocate(2);
+            nodes[node] = EXPRESSION_STMT;
+            nodes[node + 1] = expression;
+            return node;
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            int params = tokenList(stmt.params);
+            int body = stmtList(stmt.body);
+            int node = allocate(7);
+            nodes[node] = FUNCTION_STMT;
+            putToken(node + 1, stmt.name);
+            nodes[node + 3] = params;
+            nodes[node + 4] = body;
+            nodes[node + 5] = stmt.slot;
+            nodes[node + 6] = stmt.locals;
+            return node;
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            int condition = node(stmt.condition);
+            int thenBranch = node(stmt.thenBranch);
+            int elseBranch = node(stmt.elseBranch);
+            int node = allocate(4);
+            nodes[node] = IF_STMT;
+            nodes[node + 1] = condition;
+            nodes[node + 2] = thenBranch;
+            nodes[node + 3] = elseBranch;
+            return node;
+        }
+
+        @Override
+        public Integer visitImportStmt(Stmt.Import stmt) {
+            int node = allocate(5);
+            nodes[node] = IMPORT_STMT;
+            putToken(node + 1, stmt.keyword);
+            putToken(node + 3, stmt.path);
+            return node;
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            int expression = node(stmt.expression);
+            int node = allocate(2);
+            nodes[node] = PRINT_STMT;
+            nodes[node + 1] = expression;
+            return node;
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            int value = node(stmt.value);
+            int node = allocate(4);
+            nodes[node] = RETURN_STMT;
+            putToken(node + 1, stmt.keyword);
+            nodes[node + 3] = value;
+            return node;
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            int initializer = node(stmt.initializer);
+            int node = allocate(5);
+            nodes[node] = VAR_STMT;
+            putToken(node + 1, stmt.name);
+            nodes[node + 3] = initializer;
+            nodes[node + 4] = stmt.slot;
+            return node;
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            int condition = node(stmt.condition);
+            int body = node(stmt.body);
+            int node = allocate(3);
+            nodes[node] = WHILE_STMT;
+            nodes[node + 1] = condition;
+            nodes[node + 2] = body;
+            return node;
+        }
+
+        private int node(Expr expr) {
+            return expr == null ? -1 : expr.accept(this);
+        }
+
+        private int node(Stmt stmt) {
+            return stmt == null ? -1 : stmt.accept(this);
+        }
+
+        private int exprList(List<Expr> exprs) {
+            int[] items = new int[exprs.size()];
+            for(int i = 0; i < items.length; i++) items[i] = node(exprs.get(i));
+            return list(items);
+        }
+
+        private int stmtList(List<Stmt> stmts) {
+            int[] items = new int[stmts.size()];
+            for(int i = 0; i < items.length; i++) items[i] = node(stmts.get(i));
+            return list(items);
+        }
+
+        private int list(int[] items) {
+            int block = allocate(1 + items.length);
+            nodes[block] = items.length;
+            System.arraycopy(items, 0, nodes, block + 1, items.length);
+            return block;
+        }
+
+        private int tokenList(List<Token> tokens) {
+            int block = allocate(1 + 2 * tokens.size());
+            nodes[block] = tokens.size();
+            for(int i = 0; i < tokens.size(); i++) putToken(block + 1 + 2 * i, tokens.get(i));
+            return block;
+        }
+
+        private void putToken(int at, Token token) {
+            nodes[at] = string(token.lexeme());
+            nodes[at + 1] = token.line << TYPE_BITS | token.type.ordinal();
+        }
+
+        private int string(String value) {
+            Integer index = stringIndex.get(value);
+            if(index != null) return index;
+            if(stringCount == strings.length) strings = Arrays.copyOf(strings, stringCount * 2);
+            strings[stringCount] = value;
+            stringIndex.put(value, stringCount);
+            return stringCount++;
+        }
+
+        private int literal(Object value) {
+            if(value == null) return -1;
+            Integer index = literalIndex.get(value);
+            if(index != null) return index;
+            if(literalCount == literals.length) literals = Arrays.copyOf(literals, literalCount * 2);
+            literals[literalCount] = value;
+            literalIndex.put(value, literalCount);
+            return literalCount++;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.interpreter.lox.parser;
+
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.lexer.TokenCursor;
+import com.interpreter.lox.util.RuntimeError;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+// Body of a function the Parser only brace-matched: a cursor on its first token until the
+// statements are needed. Reading the list parses them; the passes that run over the whole
+// program before execution (resolving, optimizing) register with then() and run on the body
+// at that point. Everything that reads the body or the annotations those passes set goes
+// through force() first.
+public class LazyBody extends AbstractList<Stmt> {
+    private final Token name;
+    private final TokenCursor start;
+    private final List<UnaryOperator<List<Stmt>>> passes = new ArrayList<>();
+    private List<Stmt> statements;
+    private boolean failed = false;
+
+    LazyBody(Token name, TokenCursor start) {
+        this.name = name;
+        this.start = start;
+    }
+
+    // The statements of a function body, parsing it first if it was deferred.
+    public static List<Stmt> force(List<Stmt> body) {
+        if(body instanceof LazyBody) return ((LazyBody) body).statements();
+        return body;
+    }
+
+    // Runs the pass once the statements exist, right away if they already do.
+    public void then(UnaryOperator<List<Stmt>> pass) {
+        if(statements != null) {
+            statements = pass.apply(statements);
+        } else {
+            passes.add(pass);
+        }
+    }
+
+    // Parses the body right away, nested functions included, before any pass registered.
+    // The passes then treat it like an eagerly parsed body; errors are reported as usual.
+    void parseNow() {
+        if(statements != null || failed) return;
+        Parser parser = new Parser(start.fork(), true);
+        List<Stmt> body = parser.body();
+        // nested bodies stay bounded by their braces, their errors don't run into this one
+        parser.parseDeferred();
+        if(parser.hadError()) {
+            failed = true;
+        } else {
+            statements = body;
+        }
+    }
+
+    // the statements if the body has been parsed, null while it is deferred or has errors
+    public List<Stmt> parsed() {
+        return statements;
+    }
+
+    @Override
+    public Stmt get(int index) {
+        return statements().get(index);
+    }
+
+    @Override
+    public int size() {
+        return statements().size();
+    }
+
+    private List<Stmt> statements() {
+        if(statements != null) return statements;
+        // the errors were reported on the first attempt, every call fails the same way after it
+        if(failed) throw new RuntimeError(name, "Function body has errors.");
+
+        try {
+            Parser parser = new Parser(start.fork(), true);
+            List<Stmt> body = parser.body();
+            if(parser.hadError()) throw new RuntimeError(name, "Function body has errors.");
+            for(UnaryOperator<List<Stmt>> pass: passes) {
+                body = pass.apply(body);
+            }
+            statements = body;
+            passes.clear();
+            return statements;
+        } catch (RuntimeError error) {
+            failed = true;
+            throw error;
+        }
+    }
+}
@@ -2,21 +2,58 @@ package com.interpreter.lox.parser;
 
 import com.interpreter.lox.Lox;
 import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.lexer.TokenCursor;
+import com.interpreter.lox.lexer.TokenSource;
+import com.interpreter.lox.lexer.TokenStream;
 import com.interpreter.lox.lexer.TokenType;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 
 import static com.interpreter.lox.lexer.TokenType.*;
 
 public class Parser {
     private static class ParseError extends RuntimeException{}
-    private final List<Token> tokens;
-    private int current = 0;
 
-    public Parser(List<Token> tokens) {
+    // token classes are tested against a bit set, not a varargs array allocated per check
+    private static final EnumSet<TokenType> LITERALS = EnumSet.of(NUMBER, STRING);
+    private static final EnumSet<TokenType> PREFIX_OPERATORS = EnumSet.of(BANG, MINUS);
+    private static final EnumSet<TokenType> MISSING_LEFT_OPERAND = EnumSet.of(STAR, SLASH, PLUS);
+    private static final EnumSet<TokenType> STATEMENT_STARTS = EnumSet.of(CLASS, FUN, VAR, FOR, IF, WHILE, PRINT, RETURN, IMPORT);
+
+    // a single token of lookahead, tokens already parsed are not kept around
+    private final TokenCursor tokens;
+    // function bodies are only brace-matched and parsed on first use, see LazyBody
+    private final boolean lazy;
+    private final List<LazyBody> deferred = new ArrayList<>();
+    private boolean hadError = false;
+
+    public Parser(TokenCursor tokens) {
+        this(tokens, false);
+    }
+
+    // Lazy parsing needs a cursor that can be forked, others parse every body right away.
+    public Parser(TokenCursor tokens, boolean lazy) {
         this.tokens = tokens;
+        this.lazy = lazy;
+    }
+
+    public Parser(TokenSource tokens) {
+        this(TokenCursor.of(tokens));
+    }
+
+    public Parser(TokenStream tokens) {
+        this(tokens.cursor());
+    }
+
+    public Parser(TokenStream tokens, boolean lazy) {
+        this(tokens.cursor(), lazy);
+    }
+
+    public Parser(List<Token> tokens) {
+        this(TokenCursor.of(tokens.iterator()::next));
     }
 
     // TODO: Add support for ternary operator (?:)
@@ -31,6 +68,23 @@ public class Parser {
         return statements;
     }
 
+    // Parses the bodies parse() deferred after all, so the whole program is checked before it runs.
+    public void parseDeferred() {
+        for(LazyBody body: deferred) {
+            body.parseNow();
+        }
+    }
+
+    // the statements of a deferred function body, on a cursor that ends before its '}' so
+    // error recovery can't run past the body
+    List<Stmt> body() {
+        return parse();
+    }
+
+    public boolean hadError() {
+        return hadError;
+    }
+
     private Stmt declaration() {
         try {
             if(match(FUN)) {
@@ -39,6 +93,9 @@ public class Parser {
             if(match(VAR)) {
                 return varDeclaration();
             }
+            if(match(IMPORT)) {
+                return importDeclaration();
+            }
 
             return statement();
         } catch (ParseError error) {
@@ -48,7 +105,8 @@ public class Parser {
     }
 
     private Stmt function(String kind) {
-        Token name = consume(IDENTIFIER, "Expected " + kind + " name.");
+        consume(IDENTIFIER, "Expected " + kind + " name.");
+        Token name = previous();
         consume(LEFT_PAREN, "Expected '(' after " + kind + " name.");
         List<Token> params = new ArrayList<>();
         if(!check(RIGHT_PAREN)) {
@@ -56,19 +114,37 @@ public class Parser {
                 if(params.size() >= 255) {
                     error(peek(), "Can't have more than 255 parameters");
                 }
-                params.add(consume(IDENTIFIER, "Expected parameter name."));
+                consume(IDENTIFIER, "Expected parameter name.");
+                params.add(previous());
             }while (match(COMMA));
 
         }
         consume(RIGHT_PAREN, "Expected ')' after parameters.");
         consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        TokenCursor start = lazy ? tokens.fork() : null;
+        if(start != null) {
+            int length = skipBlock();
+            // the body's tokens without the closing '}'
+            LazyBody body = new LazyBody(name, start.limit(length - 1));
+            deferred.add(body);
+            return new Stmt.Function(name, params, body);
+        }
         List<Stmt> body = block();
         return new Stmt.Function(name, params, body);
 
     }
 
+    private Stmt importDeclaration() {
+        Token keyword = previous();
+        consume(STRING, "Expected module path after 'import'.");
+        Token path = previous();
+        consume(SEMICOLON, "Expected ';' after import");
+        return new Stmt.Import(keyword, path);
+    }
+
     private Stmt varDeclaration() {
-        Token name = consume(IDENTIFIER, "Expected variable name.");
+        consume(IDENTIFIER, "Expected variable name.");
+        Token name = previous();
 
         Expr initializer = null;
         if (match(EQUAL)) {
@@ -187,6 +263,21 @@ public class Parser {
         return statements;
     }
 
+    // Moves past a block without parsing it, only counting braces to find its end.
+    // returns the number of tokens skipped, the closing '}' included
+    private int skipBlock() {
+        int depth = 1;
+        int count = 0;
+        while(!isAtEnd()) {
+            TokenType type = tokens.peekType();
+            advance();
+            count++;
+            if(type == LEFT_BRACE) depth++;
+            if(type == RIGHT_BRACE && --depth == 0) return count;
+        }
+        throw error(peek(), "Expect '}' after block.");
+    }
+
     private Stmt expressionStatement() {
         Expr expr = expression();
         consume(SEMICOLON, "Expected ';' after statement");
@@ -194,163 +285,234 @@ public class Parser {
         return new Stmt.Expression(expr);
     }
 
-    private Expr expression() { return assignment(); }
-
-    private Expr assignment() {
-        // try to parse as equality / logical operator
-        Expr expr = or();
+    // Binding power of the operators that appear after an operand, NONE for every other token.
+    // assignment -> IDENTIFIER "=" assignment | logic_or, right associative
+    // logic_or -> logic_and ("or" logic_and)*
+    // logic_and -> equality ("and" equality)*
+    // equality -> comparison (("==" | "!=") comparison)*
+    // comparison -> term ((">" | ">=" | "<" | "<=") term)*
+    // term -> factor (("-" | "+") factor)*
+    // factor -> unary (("/" | "*") unary)*
+    // unary -> ("!" | "-") unary | call, binds tighter than every binary operator
+    // call -> primary ( "(" arguments? ")" )*, binds tighter still and applies to the operand directly
+    private static final int NONE = 0;
+    private static final int ASSIGNMENT = 1;
+    private static final int OR_PRECEDENCE = 2;
+    private static final int AND_PRECEDENCE = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+
+    private static final byte[] INFIX_PRECEDENCE = new byte[TokenType.values().length];
+    static {
+        INFIX_PRECEDENCE[EQUAL.ordinal()] = ASSIGNMENT;
+        INFIX_PRECEDENCE[OR.ordinal()] = OR_PRECEDENCE;
+        INFIX_PRECEDENCE[AND.ordinal()] = AND_PRECEDENCE;
+        INFIX_PRECEDENCE[BANG_EQUAL.ordinal()] = EQUALITY;
+        INFIX_PRECEDENCE[EQUAL_EQUAL.ordinal()] = EQUALITY;
+        INFIX_PRECEDENCE[GREATER.ordinal()] = COMPARISON;
+        INFIX_PRECEDENCE[GREATER_EQUAL.ordinal()] = COMPARISON;
+        INFIX_PRECEDENCE[LESS.ordinal()] = COMPARISON;
+        INFIX_PRECEDENCE[LESS_EQUAL.ordinal()] = COMPARISON;
+        INFIX_PRECEDENCE[MINUS.ordinal()] = TERM;
+        INFIX_PRECEDENCE[PLUS.ordinal()] = TERM;
+        INFIX_PRECEDENCE[SLASH.ordinal()] = FACTOR;
+        INFIX_PRECEDENCE[STAR.ordinal()] = FACTOR;
+    }
+
+    // Pending operators of the expression being parsed, innermost last. GROUP and CALL frames
+    // are open parentheses, their precedence of NONE stops every reduction at them.
+    private static final int OPERATOR = 0;
+    private static final int PREFIX = 1;
+    private static final int GROUP = 2;
+    private static final int CALL = 3;
+
+    private int[] frameKinds = new int[16];
+    private byte[] framePrecedences = new byte[16];
+    private Token[] frameTokens = new Token[16];
+    // arguments parsed so far by a CALL frame
+    private int[] frameCounts = new int[16];
+    private int frameCount = 0;
+    private Expr[] operands = new Expr[16];
+    private int operandCount = 0;
+
+    // Precedence climbing over explicit stacks instead of a function per precedence level:
+    // a primary is parsed at constant call depth, and neither long operator chains nor deep
+    // nesting of parentheses, calls, prefix operators or assignments grow the Java stack.
+    private Expr expression() {
+        int frameBase = frameCount;
+        int operandBase = operandCount;
+        try {
+            while (true) {
+                prefix();
+                pushOperand(primary());
 
-        // if match EQUALITY means the above expr is an IDENTIFIER (Variable)
-        if (match(EQUAL)) {
-            Token equals = previous();
-            Expr value = assignment();
+                if (infix(frameBase)) continue;
 
-            // try casting as IDENTIFIER
-            if(expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable)expr).name;
-                return new Expr.Assign(name, value);
+                reduce(frameBase, ASSIGNMENT);
+                return popOperand();
             }
-
-            error(equals, "Invalid assignment target.");
+        } finally {
+            frameCount = frameBase;
+            operandCount = operandBase;
         }
-        // Just return the equality expression
-        return expr;
     }
 
-    private Expr or() {
-        Expr expr = and();
-
-        while (match(OR)) {
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
+    // Pushes the prefix operators and open parentheses in front of the next operand.
+    private void prefix() {
+        while (true) {
+            TokenType type = tokens.peekType();
+            if (PREFIX_OPERATORS.contains(type)) {
+                advance();
+                pushFrame(PREFIX, UNARY, previous());
+            } else if (MISSING_LEFT_OPERAND.contains(type)) {
+                advance();
+                throw error(previous(), "Expected left Hand side of the Binary operator");
+            } else if (type == LEFT_PAREN) {
+                advance();
+                pushFrame(GROUP, NONE, null);
+            } else {
+                return;
+            }
         }
-
-        return expr;
     }
 
-    private Expr and() {
-        Expr expr = equality();
-
-        while (match(AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
+    // Consumes what follows an operand: calls and closing parentheses, which complete it,
+    // and binary operators, commas and opening argument lists, after which another operand
+    // is due (returns true). Returns false at the end of the expression.
+    private boolean infix(int frameBase) {
+        while (true) {
+            TokenType type = tokens.peekType();
+            int precedence = INFIX_PRECEDENCE[type.ordinal()];
 
-    // Rule: equality -> comparison (("==" | "!=") comparison)*
-    private Expr equality() {
-        Expr expr = comparison();
+            if (type == LEFT_PAREN) {
+                advance();
+                if (check(RIGHT_PAREN)) {
+                    advance();
+                    pushOperand(new Expr.Call(popOperand(), previous(), new ArrayList<>()));
+                    continue;
+                }
+                pushFrame(CALL, NONE, null);
+                return true;
+            }
 
-        while (match(BANG_EQUAL ,EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
+            if (precedence != NONE) {
+                advance();
+                // left associative operators complete the pending ones of the same precedence,
+                // assignment is right associative and leaves earlier assignments pending
+                reduce(frameBase, precedence == ASSIGNMENT ? ASSIGNMENT + 1 : precedence);
+                pushFrame(OPERATOR, precedence, previous());
+                return true;
+            }
 
-            expr = new Expr.Binary(expr, operator, right);
-        }
+            reduce(frameBase, ASSIGNMENT);
+            int open = frameCount > frameBase ? frameKinds[frameCount - 1] : NONE;
 
-        return expr;
-    }
+            if (open == CALL && type == COMMA) {
+                advance();
+                if (++frameCounts[frameCount - 1] >= 255) {
+                    // we don't throw error here, we just report it to the user
+                    error(peek(), "Can't have more than 255 arguments");
+                }
+                return true;
+            }
 
-    // Rule: comparison -> term ((">" | ">=" | "<" | "<=") term)*
-    private Expr comparison() {
-        Expr expr = term();
+            if (open == CALL) {
+                consume(RIGHT_PAREN, "Expect ')' after arguments.");
+                finishCall();
+                continue;
+            }
 
-        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
+            if (open == GROUP) {
+                consume(RIGHT_PAREN, "Expected ')' after expression.");
+                frameCount--;
+                pushOperand(new Expr.Grouping(popOperand()));
+                continue;
+            }
 
-            expr = new Expr.Binary(expr, operator, right);
+            return false;
         }
-
-        return expr;
     }
 
-    // Rule: factor (("-" | "+") factor)*
-    private Expr term() {
-        Expr expr = factor();
-
-        while (match(MINUS, PLUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
+    // Completes the pending operators of at least the given precedence, down to the
+    // innermost open parenthesis.
+    private void reduce(int frameBase, int precedence) {
+        while (frameCount > frameBase && framePrecedences[frameCount - 1] >= precedence) {
+            frameCount--;
+            Token operator = frameTokens[frameCount];
+            Expr right = popOperand();
 
-        return expr;
-    }
-
-    // Rule: unary (("/" | "*") unary)*
-    private Expr factor() {
-        Expr expr = unary();
+            if (frameKinds[frameCount] == PREFIX) {
+                pushOperand(new Expr.Unary(operator, right));
+                continue;
+            }
 
-        while (match(SLASH, STAR)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+            Expr left = popOperand();
+            switch (operator.type) {
+                case EQUAL:
+                    if (left instanceof Expr.Variable) {
+                        pushOperand(new Expr.Assign(((Expr.Variable) left).name, right));
+                    } else {
+                        error(operator, "Invalid assignment target.");
+                        pushOperand(left);
+                    }
+                    break;
+                case AND:
+                case OR:
+                    pushOperand(new Expr.Logical(left, operator, right));
+                    break;
+                default:
+                    pushOperand(new Expr.Binary(left, operator, right));
+            }
         }
-
-        return expr;
     }
 
-    // Rule: ("!" | "-") unary | primary
-    private Expr unary() {
-        if(match(BANG, MINUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return  new Expr.Unary(operator, right);
-        }
-        else if(match(STAR, SLASH, PLUS)) {
-            throw error(previous(), "Expected left Hand side of the Binary operator");
+    // The callee sits on the operand stack below the arguments of the CALL frame on top.
+    private void finishCall() {
+        frameCount--;
+        int count = frameCounts[frameCount] + 1;
+        List<Expr> arguments = new ArrayList<>(count);
+        for (int i = operandCount - count; i < operandCount; i++) {
+            arguments.add(operands[i]);
         }
-
-        return call();
+        operandCount -= count;
+        pushOperand(new Expr.Call(popOperand(), previous(), arguments));
     }
 
-    private Expr call() {
-        Expr expr = primary();
-
-        while (true) {
-            if(match(LEFT_PAREN)) {
-                expr = finishCall(expr);
-            } else {
-                break;
-            }
+    private void pushFrame(int kind, int precedence, Token token) {
+        if (frameCount == frameKinds.length) {
+            int capacity = frameCount * 2;
+            frameKinds = Arrays.copyOf(frameKinds, capacity);
+            framePrecedences = Arrays.copyOf(framePrecedences, capacity);
+            frameTokens = Arrays.copyOf(frameTokens, capacity);
+            frameCounts = Arrays.copyOf(frameCounts, capacity);
         }
-
-        return expr;
+        frameKinds[frameCount] = kind;
+        framePrecedences[frameCount] = (byte) precedence;
+        frameTokens[frameCount] = token;
+        frameCounts[frameCount] = 0;
+        frameCount++;
     }
 
-    private Expr finishCall(Expr callee) {
-        List<Expr> arguments = new ArrayList<>();
-        if(!check(RIGHT_PAREN)) {
-            do {
-                if(arguments.size() >= 255) {
-                    // we don't throw error here, we just report it to the user
-                    error(peek(), "Can't have more than 255 arguments");
-                }
-                arguments.add(expression());
-            }while (match(COMMA));
-        }
-
-        Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+    private void pushOperand(Expr expr) {
+        if (operandCount == operands.length) operands = Arrays.copyOf(operands, operandCount * 2);
+        operands[operandCount++] = expr;
+    }
 
-        return new Expr.Call(callee, paren, arguments);
+    private Expr popOperand() {
+        Expr expr = operands[--operandCount];
+        operands[operandCount] = null;
+        return expr;
     }
 
     private Expr primary() {
-        if(match(FALSE)) return  new Expr.Literal(FALSE);
-        if(match(TRUE)) return new Expr.Literal(TRUE);
-        if(match(NIL)) return new Expr.Literal(NIL);
-        if(match(NUMBER, STRING)) {
-            return  new Expr.Literal(previous().literal);
-        }
-        if(match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expected ')' after expression.");
-            return new Expr.Grouping(expr);
+        if(match(FALSE)) return  new Expr.Literal(false);
+        if(match(TRUE)) return new Expr.Literal(true);
+        if(match(NIL)) return new Expr.Literal(null);
+        if(match(LITERALS)) {
+            return  new Expr.Literal(tokens.previousLiteral());
         }
         if(match(IDENTIFIER)) {
             return new Expr.Variable(previous());
@@ -359,13 +521,18 @@ public class Parser {
         throw error(peek(), "Expect expression.");
     }
 
-    private Token consume(TokenType type, String message) {
-        if(check(type)) return advance();
+    // callers that keep the consumed token ask for it with previous()
+    private void consume(TokenType type, String message) {
+        if(check(type)) {
+            advance();
+            return;
+        }
 
         throw  error(peek(), message);
     }
 
     private ParseError error(Token token, String message) {
+        hadError = true;
         Lox.error(token, message);
         return new ParseError();
     }
@@ -373,53 +540,44 @@ public class Parser {
     private void synchronize() {
         advance();
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
-
-            switch (peek().type) {
-                case CLASS:
-                case FUN:
-                case VAR:
-                case FOR:
-                case IF:
-                case WHILE:
-                case PRINT:
-                case RETURN:
-                    return;
-            }
+            if (tokens.previousType() == SEMICOLON) return;
+
+            if (STATEMENT_STARTS.contains(tokens.peekType())) return;
             advance();
         }
     }
 
-    private boolean match(TokenType...types) {
-        for(TokenType type: types) {
-            if(check(type)) {
-                advance();
-                return true;
-            }
-        }
-        return false;
+    private boolean match(TokenType type) {
+        if(!check(type)) return false;
+        advance();
+        return true;
+    }
+
+    private boolean match(EnumSet<TokenType> types) {
+        if(isAtEnd() || !types.contains(tokens.peekType())) return false;
+        advance();
+        return true;
     }
 
-    private Token advance() {
-        if(!isAtEnd()) current++;
-        return previous();
+    private void advance() {
+        if(!isAtEnd()) tokens.advance();
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
 
     private boolean check(TokenType type) {
         if(isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.peek();
     }
 
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.peekType() == EOF;
     }
 }
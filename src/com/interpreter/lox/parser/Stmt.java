@@ -10,17 +10,19 @@ public abstract class Stmt {
         R visitExpressionStmt(Expression stmt);
         R visitFunctionStmt(Function stmt);
         R visitIfStmt(If stmt);
+        R visitImportStmt(Import stmt);
         R visitPrintStmt(Print stmt);
         R visitReturnStmt(Return stmt);
         R visitVarStmt(Var stmt);
         R visitWhileStmt(While stmt);
     }
     public static class Block extends Stmt {
-        Block(List<Stmt> statements) {
+        public Block(List<Stmt> statements) {
             this.statements = statements ; 
         }
 
         public final List<Stmt> statements;
+        public int locals = 0;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -28,7 +30,7 @@ public abstract class Stmt {
         }
     }
     public static class Expression extends Stmt {
-        Expression(Expr expression) {
+        public Expression(Expr expression) {
             this.expression = expression ; 
         }
 
@@ -40,7 +42,7 @@ public abstract class Stmt {
         }
     }
     public static class Function extends Stmt {
-        Function(Token name, List<Token> params, List<Stmt> body) {
+        public Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name ; 
             this.params = params ; 
             this.body = body ; 
@@ -49,6 +51,9 @@ public abstract class Stmt {
         public final Token name;
         public final  List<Token> params;
         public final  List<Stmt> body;
+        public int slot = -1;
+        public int locals = 0;
+        public com.interpreter.lox.jit.CompiledFunction compiled = null;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -56,7 +61,7 @@ public abstract class Stmt {
         }
     }
     public static class If extends Stmt {
-        If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+        public If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
             this.condition = condition ; 
             this.thenBranch = thenBranch ; 
             this.elseBranch = elseBranch ; 
@@ -71,8 +76,22 @@ public abstract class Stmt {
             return visitor.visitIfStmt(this);
         }
     }
+    public static class Import extends Stmt {
+        public Import(Token keyword, Token path) {
+            this.keyword = keyword ; 
+            this.path = path ; 
+        }
+
+        public final Token keyword;
+        public final  Token path;
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitImportStmt(this);
+        }
+    }
     public static class Print extends Stmt {
-        Print(Expr expression) {
+        public Print(Expr expression) {
             this.expression = expression ; 
         }
 
@@ -84,7 +103,7 @@ public abstract class Stmt {
         }
     }
     public static class Return extends Stmt {
-        Return(Token keyword, Expr value) {
+        public Return(Token keyword, Expr value) {
             this.keyword = keyword ; 
             this.value = value ; 
         }
@@ -98,13 +117,14 @@ public abstract class Stmt {
         }
     }
     public static class Var extends Stmt {
-        Var(Token name, Expr initializer) {
+        public Var(Token name, Expr initializer) {
             this.name = name ; 
             this.initializer = initializer ; 
         }
 
         public final Token name;
         public final  Expr initializer;
+        public int slot = -1;
 
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -112,7 +132,7 @@ public abstract class Stmt {
         }
     }
     public static class While extends Stmt {
-        While(Expr condition, Stmt body) {
+        public While(Expr condition, Stmt body) {
             this.condition = condition ; 
             this.body = body ; 
         }
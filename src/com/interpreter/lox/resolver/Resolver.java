@@ -0,0 +1,299 @@
+package com.interpreter.lox.resolver;
+
+import com.interpreter.lox.Lox;
+import com.interpreter.lox.lexer.Symbol;
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.parser.Expr;
+import com.interpreter.lox.parser.LazyBody;
+import com.interpreter.lox.parser.Stmt;
+import com.interpreter.lox.util.RuntimeError;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Static pass that runs between the parser and the interpreter.
+// Every local variable reference gets annotated with the number of scopes between
+// the reference and its declaration (depth) and its index inside that scope (slot).
+// References left with depth -1 are globals and are looked up by name at runtime.
+// Blocks and functions are annotated with the number of slots their frame needs.
+public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private enum FunctionType {
+        NONE,
+        FUNCTION
+    }
+
+    private static class Local {
+        final int slot;
+        boolean defined = false;
+
+        Local(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    private final List<Map<Symbol, Local>> scopes;
+    private FunctionType currentFunction = FunctionType.NONE;
+    private boolean hadError = false;
+
+    public Resolver() {
+        this(new ArrayList<>());
+    }
+
+    private Resolver(List<Map<Symbol, Local>> scopes) {
+        this.scopes = scopes;
+    }
+
+    public void resolve(List<Stmt> statements) {
+        for(Stmt statement: statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+        expr.depth = resolveLocal(expr.name);
+        if(expr.depth != -1) {
+            expr.slot = slotOf(expr.depth, expr.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+        for(Expr argument: expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if(!scopes.isEmpty()) {
+            Local local = scopes.get(scopes.size() - 1).get(expr.name.symbol());
+            if(local != null && !local.defined) {
+                error(expr.name, "Can't read local variable in its own initializer.");
+            }
+        }
+
+        expr.depth = resolveLocal(expr.name);
+        if(expr.depth != -1) {
+            expr.slot = slotOf(expr.depth, expr.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        resolve(stmt.statements);
+        stmt.locals = endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        // define eagerly so that the function can refer to itself recursively
+        stmt.slot = declare(stmt.name);
+        define(stmt.name);
+
+        resolveFunction(stmt, FunctionType.FUNCTION);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        if(stmt.elseBranch != null) resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        // modules are linked into the top level of the program, see ModuleLoader
+        if(!scopes.isEmpty()) {
+            error(stmt.keyword, "Can only import at top level.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if(currentFunction == FunctionType.NONE) {
+            error(stmt.keyword, "Can't return from top-level code.");
+        }
+
+        if(stmt.value != null) {
+            resolve(stmt.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        stmt.slot = declare(stmt.name);
+        if(stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        define(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        return null;
+    }
+
+    private void resolveFunction(Stmt.Function function, FunctionType type) {
+        if(function.body instanceof LazyBody && ((LazyBody) function.body).parsed() != null) {
+            // parsed ahead of time, its errors are reported with the rest of the program's
+            resolveFunction(function, ((LazyBody) function.body).parsed(), type);
+            return;
+        }
+        if(function.body instanceof LazyBody) {
+            // resolved once the body is parsed, against the scopes visible at the declaration
+            Resolver resolver = new Resolver(copyScopes());
+            ((LazyBody) function.body).then(body -> {
+                resolver.resolveFunction(function, body, type);
+                if(resolver.hadError) throw new RuntimeError(function.name, "Function body has errors.");
+                return body;
+            });
+            return;
+        }
+
+        resolveFunction(function, function.body, type);
+    }
+
+    private void resolveFunction(Stmt.Function function, List<Stmt> body, FunctionType type) {
+        FunctionType enclosingFunction = currentFunction;
+        currentFunction = type;
+
+        // parameters and the body share one scope, mirroring the environment LoxFunction.call creates
+        beginScope();
+        for(Token param: function.params) {
+            declare(param);
+            define(param);
+        }
+        resolve(body);
+        function.locals = endScope();
+
+        currentFunction = enclosingFunction;
+    }
+
+    private List<Map<Symbol, Local>> copyScopes() {
+        List<Map<Symbol, Local>> copy = new ArrayList<>(scopes.size());
+        for(Map<Symbol, Local> scope: scopes) {
+            copy.add(new HashMap<>(scope));
+        }
+        return copy;
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    // returns the number of slots declared in the scope
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).size();
+    }
+
+    // returns the slot of the declared variable, or -1 for globals
+    private int declare(Token name) {
+        if(scopes.isEmpty()) return -1;
+
+        Map<Symbol, Local> scope = scopes.get(scopes.size() - 1);
+        if(scope.containsKey(name.symbol())) {
+            error(name, "Already a variable with this name in this scope.");
+            return scope.get(name.symbol()).slot;
+        }
+        // slots are handed out in declaration order
+        Local local = new Local(scope.size());
+        scope.put(name.symbol(), local);
+        return local.slot;
+    }
+
+    private void define(Token name) {
+        if(scopes.isEmpty()) return;
+        scopes.get(scopes.size() - 1).get(name.symbol()).defined = true;
+    }
+
+    public boolean hadError() {
+        return hadError;
+    }
+
+    private void error(Token token, String message) {
+        hadError = true;
+        Lox.error(token, message);
+    }
+
+    private int resolveLocal(Token name) {
+        for(int i = scopes.size() - 1; i >= 0; i--) {
+            if(scopes.get(i).containsKey(name.symbol())) {
+                return scopes.size() - 1 - i;
+            }
+        }
+        // Not found in any local scope, assume it is global.
+        return -1;
+    }
+
+    private int slotOf(int depth, Token name) {
+        return scopes.get(scopes.size() - 1 - depth).get(name.symbol()).slot;
+    }
+}
@@ -0,0 +1,114 @@
+package com.interpreter.lox.script;
+
+import com.interpreter.lox.LoxError;
+import com.interpreter.lox.LoxProgram;
+import com.interpreter.lox.LoxResult;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+// JSR-223 view of LoxProgram. The bindings of the context are the globals of the script:
+// global scope first, engine scope over it, and the globals the script leaves behind are
+// written back to the engine scope. Printed lines go to the writer of the context.
+// A CompiledScript can be evaluated from many threads at once as long as each of them
+// passes bindings of its own.
+public class LoxScriptEngine extends AbstractScriptEngine implements Compilable {
+    private final ScriptEngineFactory factory;
+
+    LoxScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        LoxProgram program = LoxProgram.compile(script);
+        if (program.hasErrors())
+            throw exception(program.errors().get(0), context);
+        return new Script(program);
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    private class Script extends CompiledScript {
+        private final LoxProgram program;
+
+        Script(LoxProgram program) {
+            this.program = program;
+        }
+
+        // Lox statements have no value, so evaluating a script returns null
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Map<String, Object> globals = new HashMap<>();
+            Bindings global = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+            if (global != null)
+                globals.putAll(global);
+            Bindings engine = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            if (engine != null)
+                globals.putAll(engine);
+
+            LoxResult result = program.execute(globals, context.getWriter());
+            if (engine != null)
+                engine.putAll(result.globals());
+            if (!result.succeeded())
+                throw exception(result.errors().get(0), context);
+            return null;
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return LoxScriptEngine.this;
+        }
+    }
+
+    private static ScriptException exception(LoxError error, ScriptContext context) {
+        Object file = context.getAttribute(ScriptEngine.FILENAME);
+        return new ScriptException(error.message(), file == null ? null : file.toString(),
+                error.line() == 0 ? -1 : error.line());
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringWriter source = new StringWriter();
+        try {
+            reader.transferTo(source);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return source.toString();
+    }
+}
@@ -15,7 +15,7 @@ public class ASTPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
-        return genTree(expr.operator.lexeme, expr.left, expr.right);
+        return genTree(expr.operator.lexeme(), expr.left, expr.right);
     }
 
     @Override
@@ -41,7 +41,7 @@ public class ASTPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitUnaryExpr(Expr.Unary expr) {
-        return genTree(expr.operator.lexeme, expr.right);
+        return genTree(expr.operator.lexeme(), expr.right);
     }
 
     @Override
@@ -0,0 +1,35 @@
+package com.interpreter.lox.vm;
+
+import com.interpreter.lox.lexer.Token;
+
+import java.util.Arrays;
+
+// A compiled unit of bytecode together with its constant pool.
+// Instructions that can fail at runtime record the token to blame in `sites`,
+// indexed by the offset of the opcode.
+public class Chunk {
+    byte[] code = new byte[64];
+    Token[] sites = new Token[64];
+    int count = 0;
+
+    Object[] constants = new Object[16];
+    int constantCount = 0;
+
+    void write(byte b, Token site) {
+        if(count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            sites = Arrays.copyOf(sites, count * 2);
+        }
+        code[count] = b;
+        sites[count] = site;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        if(constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        return constantCount++;
+    }
+}
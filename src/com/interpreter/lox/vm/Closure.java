@@ -0,0 +1,19 @@
+package com.interpreter.lox.vm;
+
+import com.interpreter.lox.interpreter.Environment;
+
+// Runtime function value of the VM: a prototype plus the environment it was declared in.
+class Closure {
+    final Prototype prototype;
+    final Environment environment;
+
+    Closure(Prototype prototype, Environment environment) {
+        this.prototype = prototype;
+        this.environment = environment;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + prototype.name.lexeme() + ">";
+    }
+}
@@ -0,0 +1,329 @@
+package com.interpreter.lox.vm;
+
+import com.interpreter.lox.Lox;
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.lexer.TokenType;
+import com.interpreter.lox.parser.FlatAST;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.interpreter.lox.vm.OpCode.*;
+
+// Translates a resolved program, flattened into a FlatAST, into bytecode for the VM.
+// Variable accesses reuse the (depth, slot) coordinates computed by the Resolver.
+public class Compiler implements FlatAST.Visitor<Void> {
+    private static final int MAX_U16 = 0xffff;
+
+    private FlatAST ast;
+    private Chunk chunk;
+    // index of every constant in the chunk being compiled, so a value is added only once
+    private Map<Object, Integer> constants;
+    // line of the last instruction with a source token, used for compile errors
+    private int line = 1;
+
+    public Chunk compile(FlatAST ast) {
+        this.ast = ast;
+        chunk = new Chunk();
+        constants = new HashMap<>();
+        for(int i = 0; i < ast.statementCount(); i++) {
+            compile(ast.statement(i));
+        }
+        emit(NIL, null);
+        emit(RETURN, null);
+        return chunk;
+    }
+
+    private void compile(int node) {
+        ast.accept(node, this);
+    }
+
+    @Override
+    public Void visitAssignExpr(int expr) {
+        compile(ast.assignValue(expr));
+        Token name = ast.assignName(expr);
+        int depth = ast.assignDepth(expr);
+        if(depth != -1) {
+            emit(SET_LOCAL, name);
+            emitShort(depth);
+            emitShort(ast.assignSlot(expr));
+        } else {
+            emit(SET_GLOBAL, name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(int expr) {
+        compile(ast.binaryLeft(expr));
+        compile(ast.binaryRight(expr));
+
+        Token operator = ast.binaryOperator(expr);
+        switch (operator.type) {
+            case GREATER: emit(GREATER, operator); break;
+            case GREATER_EQUAL: emit(GREATER_EQUAL, operator); break;
+            case LESS: emit(LESS, operator); break;
+            case LESS_EQUAL: emit(LESS_EQUAL, operator); break;
+            case BANG_EQUAL:
+                emit(EQUAL, operator);
+                emit(NOT, operator);
+                break;
+            case EQUAL_EQUAL: emit(EQUAL, operator); break;
+            case PLUS: emit(ADD, operator); break;
+            case MINUS: emit(SUBTRACT, operator); break;
+            case SLASH: emit(DIVIDE, operator); break;
+            case STAR: emit(MULTIPLY, operator); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(int expr) {
+        compile(ast.callCallee(expr));
+        int argCount = ast.callArgumentsSize(expr);
+        for(int i = 0; i < argCount; i++) {
+            compile(ast.callArguments(expr, i));
+        }
+        Token paren = ast.callParen(expr);
+        emit(CALL, paren);
+        emit((byte) argCount, paren);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(int expr) {
+        compile(ast.groupingExpression(expr));
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(int expr) {
+        Object value = ast.literalValue(expr);
+        if(value == null) {
+            emit(NIL, null);
+        } else {
+            emit(CONSTANT, null);
+            emitShort(makeConstant(value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(int expr) {
+        compile(ast.logicalLeft(expr));
+
+        if(ast.logicalOperatorType(expr) == TokenType.OR) {
+            // a truthy left operand is the result, otherwise fall through to the right one
+            int elseJump = emitJump(JUMP_IF_FALSE);
+            int endJump = emitJump(JUMP);
+            patchJump(elseJump);
+            emit(POP, null);
+            compile(ast.logicalRight(expr));
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(JUMP_IF_FALSE);
+            emit(POP, null);
+            compile(ast.logicalRight(expr));
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(int expr) {
+        compile(ast.unaryRight(expr));
+
+        Token operator = ast.unaryOperator(expr);
+        switch (operator.type) {
+            case BANG: emit(NOT, operator); break;
+            case MINUS: emit(NEGATE, operator); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(int expr) {
+        Token name = ast.variableName(expr);
+        int depth = ast.variableDepth(expr);
+        if(depth != -1) {
+            emit(GET_LOCAL, name);
+            emitShort(depth);
+            emitShort(ast.variableSlot(expr));
+        } else {
+            emit(GET_GLOBAL, name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(int stmt) {
+        // every block gets a frame, even an empty one, since resolved depths count it
+        emit(PUSH_SCOPE, null);
+        emitShort(ast.blockLocals(stmt));
+        for(int i = 0; i < ast.blockStatementsSize(stmt); i++) {
+            compile(ast.blockStatements(stmt, i));
+        }
+        emit(POP_SCOPE, null);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(int stmt) {
+        compile(ast.expressionExpression(stmt));
+        emit(POP, null);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(int stmt) {
+        Chunk enclosing = chunk;
+        Map<Object, Integer> enclosingConstants = constants;
+        chunk = new Chunk();
+        constants = new HashMap<>();
+        for(int i = 0; i < ast.functionBodySize(stmt); i++) {
+            compile(ast.functionBody(stmt, i));
+        }
+        emit(NIL, null);
+        emit(RETURN, null);
+        Token name = ast.functionName(stmt);
+        Prototype prototype = new Prototype(name, ast.functionParamsSize(stmt), ast.functionLocals(stmt), chunk);
+        chunk = enclosing;
+        constants = enclosingConstants;
+
+        emit(CLOSURE, name);
+        emitShort(makeConstant(prototype));
+        defineVariable(name, ast.functionSlot(stmt));
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(int stmt) {
+        compile(ast.ifCondition(stmt));
+        int thenJump = emitJump(JUMP_IF_FALSE);
+        emit(POP, null);
+        compile(ast.ifThenBranch(stmt));
+
+        int elseJump = emitJump(JUMP);
+        patchJump(thenJump);
+        emit(POP, null);
+        int elseBranch = ast.ifElseBranch(stmt);
+        if(elseBranch != -1) compile(elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitImportStmt(int stmt) {
+        // the ModuleLoader replaces imports with the imported statements before compilation
+        Lox.error(ast.importKeyword(stmt), "Import was not linked.");
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(int stmt) {
+        compile(ast.printExpression(stmt));
+        emit(PRINT, null);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(int stmt) {
+        int value = ast.returnValue(stmt);
+        if(value != -1) {
+            compile(value);
+        } else {
+            emit(NIL, null);
+        }
+        emit(RETURN, ast.returnKeyword(stmt));
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(int stmt) {
+        int initializer = ast.varInitializer(stmt);
+        if(initializer != -1) {
+            compile(initializer);
+        } else {
+            emit(NIL, null);
+        }
+        defineVariable(ast.varName(stmt), ast.varSlot(stmt));
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(int stmt) {
+        int loopStart = chunk.count;
+        compile(ast.whileCondition(stmt));
+
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        emit(POP, null);
+        compile(ast.whileBody(stmt));
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(POP, null);
+        return null;
+    }
+
+    private void defineVariable(Token name, int slot) {
+        if(slot != -1) {
+            emit(DEFINE_LOCAL, name);
+            emitShort(slot);
+        } else {
+            emit(DEFINE_GLOBAL, name);
+        }
+    }
+
+    private void emit(byte b, Token site) {
+        if(site != null) line = site.line;
+        chunk.write(b, site);
+    }
+
+    private void emitShort(int value) {
+        chunk.write((byte) ((value >> 8) & 0xff), null);
+        chunk.write((byte) (value & 0xff), null);
+    }
+
+    private int emitJump(byte instruction) {
+        emit(instruction, null);
+        emitShort(MAX_U16);
+        return chunk.count - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the jump offset itself
+        int jump = chunk.count - offset - 2;
+        if(jump > MAX_U16) {
+            Lox.error(line, "Too much code to jump over.");
+        }
+
+        chunk.code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk.code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(LOOP, null);
+
+        // +2 to skip over the operand of LOOP itself
+        int offset = chunk.count - loopStart + 2;
+        if(offset > MAX_U16) {
+            Lox.error(line, "Loop body too large.");
+        }
+        emitShort(offset);
+    }
+
+    // equals keeps 0.0 and -0.0 apart, so only values that behave the same share a slot
+    private int makeConstant(Object value) {
+        Integer index = constants.get(value);
+        if(index != null) return index;
+
+        int constant = chunk.addConstant(value);
+        constants.put(value, constant);
+        if(constant > MAX_U16) {
+            // reported for the first constant that doesn't fit, not for every one after it
+            if(constant == MAX_U16 + 1) Lox.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+        return constant;
+    }
+}
@@ -0,0 +1,42 @@
+package com.interpreter.lox.vm;
+
+// Instruction set of the VM. Operands follow the opcode inline; u16 operands are big-endian.
+public final class OpCode {
+    private OpCode() {}
+
+    public static final byte CONSTANT = 0;      // u16 constant index
+    public static final byte NIL = 1;
+    public static final byte POP = 2;
+
+    public static final byte GET_LOCAL = 3;     // u16 depth, u16 slot
+    public static final byte SET_LOCAL = 4;     // u16 depth, u16 slot
+    public static final byte DEFINE_LOCAL = 5;  // u16 slot
+    // globals take no operand, the name token is the site of the instruction
+    public static final byte GET_GLOBAL = 6;
+    public static final byte SET_GLOBAL = 7;
+    public static final byte DEFINE_GLOBAL = 8;
+
+    public static final byte EQUAL = 9;
+    public static final byte GREATER = 10;
+    public static final byte GREATER_EQUAL = 11;
+    public static final byte LESS = 12;
+    public static final byte LESS_EQUAL = 13;
+    public static final byte ADD = 14;
+    public static final byte SUBTRACT = 15;
+    public static final byte MULTIPLY = 16;
+    public static final byte DIVIDE = 17;
+    public static final byte NOT = 18;
+    public static final byte NEGATE = 19;
+
+    public static final byte PRINT = 20;
+    public static final byte JUMP = 21;          // u16 forward offset
+    public static final byte JUMP_IF_FALSE = 22; // u16 forward offset, leaves the condition on the stack
+    public static final byte LOOP = 23;          // u16 backward offset
+
+    public static final byte CALL = 24;          // u8 argument count
+    public static final byte CLOSURE = 25;       // u16 constant index of the Prototype
+    public static final byte RETURN = 26;
+
+    public static final byte PUSH_SCOPE = 27;    // u16 number of slots
+    public static final byte POP_SCOPE = 28;
+}
@@ -0,0 +1,18 @@
+package com.interpreter.lox.vm;
+
+import com.interpreter.lox.lexer.Token;
+
+// Compile-time description of a function, stored in the constant pool of the enclosing chunk.
+class Prototype {
+    final Token name;
+    final int arity;
+    final int locals;
+    final Chunk chunk;
+
+    Prototype(Token name, int arity, int locals, Chunk chunk) {
+        this.name = name;
+        this.arity = arity;
+        this.locals = locals;
+        this.chunk = chunk;
+    }
+}
@@ -0,0 +1,333 @@
+package com.interpreter.lox.vm;
+
+import com.interpreter.lox.Lox;
+import com.interpreter.lox.interpreter.Environment;
+import com.interpreter.lox.interpreter.Interpreter;
+import com.interpreter.lox.interpreter.LoxCallable;
+import com.interpreter.lox.interpreter.LoxString;
+import com.interpreter.lox.interpreter.Natives;
+import com.interpreter.lox.interpreter.Output;
+import com.interpreter.lox.lexer.Token;
+import com.interpreter.lox.util.RuntimeError;
+
+import java.util.Arrays;
+
+import static com.interpreter.lox.vm.OpCode.*;
+
+// Stack based virtual machine executing the bytecode produced by the Compiler.
+// Frames are the same slot-array Environments the tree-walking Interpreter uses, so
+// closures and resolved (depth, slot) coordinates behave identically in both engines.
+public class VM {
+    private static class CallFrame {
+        Chunk chunk;
+        int ip;
+        Environment environment;
+        // stack index of the callee, everything from here up is discarded on return
+        int base;
+    }
+
+    private final Environment globals = new Environment();
+    private Object[] stack = new Object[256];
+    private int stackTop = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+
+    private final Output output;
+
+    public VM() {
+        this(Output.standard());
+    }
+
+    public VM(Output output) {
+        this.output = output;
+        Natives.define(globals);
+    }
+
+    public void interpret(Chunk script) {
+        stackTop = 0;
+        frameCount = 0;
+        try {
+            CallFrame frame = pushFrame();
+            frame.chunk = script;
+            frame.ip = 0;
+            frame.environment = globals;
+            frame.base = 0;
+            run();
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        } finally {
+            // nothing of this run stays reachable from a VM that is kept around
+            Arrays.fill(stack, 0, stackTop, null);
+            stackTop = 0;
+            for(CallFrame frame: frames) {
+                if(frame == null) break;
+                frame.chunk = null;
+                frame.environment = null;
+            }
+        }
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        Chunk chunk = frame.chunk;
+        byte[] code = chunk.code;
+        int ip = frame.ip;
+        Environment environment = frame.environment;
+
+        while (true) {
+            int start = ip;
+            switch (code[ip++]) {
+                case CONSTANT:
+                    push(chunk.constants[readShort(code, ip)]);
+                    ip += 2;
+                    break;
+                case NIL:
+                    push(null);
+                    break;
+                case POP:
+                    stack[--stackTop] = null;
+                    break;
+
+                case GET_LOCAL:
+                    push(environment.getAt(readShort(code, ip), readShort(code, ip + 2)));
+                    ip += 4;
+                    break;
+                case SET_LOCAL:
+                    environment.assignAt(readShort(code, ip), readShort(code, ip + 2), peek());
+                    ip += 4;
+                    break;
+                case DEFINE_LOCAL:
+                    environment.define(readShort(code, ip), pop());
+                    ip += 2;
+                    break;
+                case GET_GLOBAL:
+                    push(globals.get(chunk.sites[start]));
+                    break;
+                case SET_GLOBAL:
+                    globals.assign(chunk.sites[start], peek());
+                    break;
+                case DEFINE_GLOBAL:
+                    globals.define(chunk.sites[start].symbol(), pop());
+                    break;
+
+                case EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Interpreter.isEqual(left, right));
+                    break;
+                }
+                case GREATER: {
+                    checkNumberOperands(chunk.sites[start]);
+                    double right = (double) pop();
+                    double left = (double) pop();
+                    push(left > right);
+                    break;
+                }
+                case GREATER_EQUAL: {
+                    checkNumberOperands(chunk.sites[start]);
+                    double right = (double) pop();
+                    double left = (double) pop();
+                    push(left >= right);
+                    break;
+                }
+                case LESS: {
+                    checkNumberOperands(chunk.sites[start]);
+                    double right = (double) pop();
+                    double left = (double) pop();
+                    push(left < right);
+                    break;
+                }
+                case LESS_EQUAL: {
+                    checkNumberOperands(chunk.sites[start]);
+                    double right = (double) pop();
+                    double left = (double) pop();
+                    push(left <= right);
+                    break;
+                }
+                case ADD: {
+                    Object right = pop();
+                    Object left = pop();
+                    if(left instanceof Double && right instanceof Double) {
+                        push((double) left + (double) right);
+                    } else if(LoxString.isString(left) && LoxString.isString(right)) {
+                        push(LoxString.concat(left, right));
+                    } else {
+                        throw new RuntimeError(chunk.sites[start], "Operands must be numbers or strings");
+                    }
+                    break;
+                }
+                case SUBTRACT: {
+                    checkNumberOperands(chunk.sites[start]);
+                    double right = (double) pop();
+                    double left = (double) pop();
+                    push(left - right);
+                    break;
+                }
+                case MULTIPLY: {
+                    checkNumberOperands(chunk.sites[start]);
+                    double right = (double) pop();
+                    double left = (double) pop();
+                    push(left * right);
+                    break;
+                }
+                case DIVIDE: {
+                    checkNumberOperands(chunk.sites[start]);
+                    double right = (double) pop();
+                    double left = (double) pop();
+                    push(left / right);
+                    break;
+                }
+                case NOT:
+                    push(!Interpreter.isTruthy(pop()));
+                    break;
+                case NEGATE:
+                    if(!(peek() instanceof Double)) {
+                        throw new RuntimeError(chunk.sites[start], "Operand must be a number");
+                    }
+                    push(-(double) pop());
+                    break;
+
+                case PRINT:
+                    output.printValue(pop());
+                    break;
+                case JUMP:
+                    ip += 2 + readShort(code, ip);
+                    break;
+                case JUMP_IF_FALSE:
+                    if(Interpreter.isTruthy(peek())) {
+                        ip += 2;
+                    } else {
+                        ip += 2 + readShort(code, ip);
+                    }
+                    break;
+                case LOOP:
+                    ip += 2 - readShort(code, ip);
+                    break;
+
+                case CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    Object callee = stack[stackTop - argCount - 1];
+                    Token paren = chunk.sites[start];
+                    if(callee instanceof Closure) {
+                        Closure closure = (Closure) callee;
+                        checkArity(paren, closure.prototype.arity, argCount);
+
+                        Environment callEnvironment = new Environment(closure.environment, closure.prototype.locals);
+                        // parameters occupy the first slots of the frame
+                        for(int i = 0; i < argCount; i++) {
+                            callEnvironment.define(i, stack[stackTop - argCount + i]);
+                        }
+
+                        frame.ip = ip;
+                        // the caller may be inside nested block scopes
+                        frame.environment = environment;
+                        frame = pushFrame();
+                        frame.chunk = closure.prototype.chunk;
+                        frame.environment = callEnvironment;
+                        frame.base = stackTop - argCount - 1;
+                        chunk = frame.chunk;
+                        code = chunk.code;
+                        ip = 0;
+                        environment = callEnvironment;
+                    } else if(callee instanceof LoxCallable) {
+                        LoxCallable function = (LoxCallable) callee;
+                        checkArity(paren, function.arity(), argCount);
+
+                        int first = stackTop - argCount;
+                        // natives don't depend on the tree-walking interpreter
+                        Object result = callNative(function, argCount, first);
+                        // the callee and its arguments are dead
+                        Arrays.fill(stack, first - 1, stackTop, null);
+                        stackTop = first - 1;
+                        push(result);
+                    } else {
+                        throw new RuntimeError(paren, "Can only call functions and classes.");
+                    }
+                    break;
+                }
+                case CLOSURE:
+                    push(new Closure((Prototype) chunk.constants[readShort(code, ip)], environment));
+                    ip += 2;
+                    break;
+                case RETURN: {
+                    Object result = pop();
+                    frameCount--;
+                    if(frameCount == 0) return;
+
+                    // popped slots are cleared, the stack doesn't keep dead values alive
+                    Arrays.fill(stack, frame.base, stackTop, null);
+                    stackTop = frame.base;
+                    push(result);
+                    frame = frames[frameCount - 1];
+                    chunk = frame.chunk;
+                    code = chunk.code;
+                    ip = frame.ip;
+                    environment = frame.environment;
+                    break;
+                }
+
+                case PUSH_SCOPE:
+                    environment = new Environment(environment, readShort(code, ip));
+                    ip += 2;
+                    break;
+                case POP_SCOPE:
+                    environment = environment.enclosing;
+                    break;
+            }
+        }
+    }
+
+    private CallFrame pushFrame() {
+        if(frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        if(frames[frameCount] == null) {
+            frames[frameCount] = new CallFrame();
+        }
+        return frames[frameCount++];
+    }
+
+    private static int readShort(byte[] code, int offset) {
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    private void push(Object value) {
+        if(stackTop == stack.length) {
+            stack = Arrays.copyOf(stack, stackTop * 2);
+        }
+        stack[stackTop++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--stackTop];
+        stack[stackTop] = null;
+        return value;
+    }
+
+    private Object peek() {
+        return stack[stackTop - 1];
+    }
+
+    private void checkNumberOperands(Token operator) {
+        if(stack[stackTop - 1] instanceof Double && stack[stackTop - 2] instanceof Double) return;
+
+        throw new RuntimeError(operator, "Operands must be numbers");
+    }
+
+    // arguments are still in place on the stack, above the callee
+    private Object callNative(LoxCallable function, int argCount, int first) {
+        switch (argCount) {
+            case 0: return function.call0(null);
+            case 1: return function.call1(null, stack[first]);
+            case 2: return function.call2(null, stack[first], stack[first + 1]);
+            case 3: return function.call3(null, stack[first], stack[first + 1], stack[first + 2]);
+        }
+        return function.call(null, Arrays.copyOfRange(stack, first, first + argCount));
+    }
+
+    private void checkArity(Token paren, int arity, int argCount) {
+        if(argCount != arity) {
+            throw new RuntimeError(paren, "Expected " + arity + " arguments but got " + argCount + ".");
+        }
+    }
+}
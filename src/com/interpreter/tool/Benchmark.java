@@ -0,0 +1,43 @@
+package com.interpreter.tool;
+
+import com.interpreter.lox.interpreter.Interpreter;
+import com.interpreter.lox.lexer.Scanner;
+import com.interpreter.lox.parser.Parser;
+import com.interpreter.lox.parser.Stmt;
+import com.interpreter.lox.resolver.Resolver;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Runs a Lox script repeatedly in-process on the tree-walking interpreter and reports,
+// for every run, the wall-clock time and the bytes allocated by the running thread.
+public class Benchmark {
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1 || args.length > 2) {
+            System.err.println("Usage: benchmark <script> [iterations]");
+            System.exit(64);
+        }
+        String source = Files.readString(Path.of(args[0]));
+        int iterations = args.length == 2 ? Integer.parseInt(args[1]) : 10;
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for(int i = 1; i <= iterations; i++) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+
+            List<Stmt> statements = new Parser(new Scanner(source)).parse();
+            new Resolver().resolve(statements);
+            new Interpreter().interpret(statements);
+
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+            System.err.printf("run %d: %.1f ms, %.1f MB allocated%n", i, elapsed / 1e6, allocated / 1e6);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.interpreter.tool;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -14,28 +15,33 @@ public class GenerateAST {
         }
         String outputDir = args[0];
 
-        defineAST(outputDir, "Expr", Arrays.asList(
-                "Assign: Token name, Expr value",
-                "Binary : Expr left, Token operator, Expr right",
-                "Call : Expr callee, Token paren, List<Expr> arguments",
+        List<String> exprTypes = Arrays.asList(
+                "Assign: Token name, Expr value : int depth = -1, int slot = -1",
+                "Binary : Expr left, Token operator, Expr right : int specialization = 0",
+                "Call : Expr callee, Token paren, List<Expr> arguments : Stmt.Function checked = null",
                 "Grouping : Expr expression",
                 "Literal : Object value",
-                "Logical : Expr left, Token operator, Expr right",
-                "Unary : Token operator, Expr right",
-                "Variable: Token name"
-        ));
+                "Logical : Expr left, Token operator, Expr right : int specialization = 0",
+                "Unary : Token operator, Expr right : int specialization = 0",
+                "Variable: Token name : int depth = -1, int slot = -1"
+        );
 
-        defineAST(outputDir, "Stmt", Arrays.asList(
-                "Block: List<Stmt> statements",
+        List<String> stmtTypes = Arrays.asList(
+                "Block: List<Stmt> statements : int locals = 0",
                 "Expression : Expr expression",
-                "Function: Token name, List<Token> params, List<Stmt> body",
+                "Function: Token name, List<Token> params, List<Stmt> body : int slot = -1, int locals = 0, com.interpreter.lox.jit.CompiledFunction compiled = null",
                 "If : Expr condition, Stmt thenBranch, Stmt elseBranch",
+                "Import : Token keyword, Token path",
                 "Print : Expr expression",
                 "Return: Token keyword, Expr value",
-                "Var: Token name, Expr initializer",
+                "Var: Token name, Expr initializer : int slot = -1",
                 "While : Expr condition, Stmt body"
 
-        ));
+        );
+
+        defineAST(outputDir, "Expr", exprTypes);
+        defineAST(outputDir, "Stmt", stmtTypes);
+        defineFlatAST(outputDir, exprTypes, stmtTypes);
     }
 
     private static void defineAST(String outputDir, String baseName, List<String> types) throws IOException {
@@ -57,8 +63,10 @@ public class GenerateAST {
         for(String type: types) {
             String className = type.split(":")[0].trim();
             String fields = type.split(":")[1].trim();
+            // optional third section holds mutable fields filled in by later passes
+            String annotations = type.split(":").length > 2 ? type.split(":")[2].trim() : null;
 
-            defineType(writer, baseName, className, fields);
+            defineType(writer, baseName, className, fields, annotations);
         }
 
         writer.println();
@@ -81,9 +89,10 @@ public class GenerateAST {
         writer.println("    }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldsList) {
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldsList,
+                                   String annotationList) {
         writer.println("    public static class " + className + " extends " + baseName + " {");
-        writer.println("        " + className + "(" + fieldsList + ") {");
+        writer.println("        public " + className + "(" + fieldsList + ") {");
 
         String[] fields = fieldsList.split(",");
         for(String field: fields) {
@@ -98,6 +107,11 @@ public class GenerateAST {
         for(String field: fields) {
             writer.println("        public final " + field + ";");
         }
+        if(annotationList != null) {
+            for(String annotation: annotationList.split(",")) {
+                writer.println("        public " + annotation.trim() + ";");
+            }
+        }
 
         writer.println();
         writer.println("        @Override");
@@ -107,4 +121,431 @@ public class GenerateAST {
 
         writer.println("    }");
     }
+
+    // A node kind of the flat encoding: its fields and the arena slots they take.
+    private static class FlatType {
+        final String baseName;
+        final String className;
+        final List<String[]> fields = new ArrayList<>();      // {type, name, offset}
+        final List<String[]> annotations = new ArrayList<>(); // {name, offset}
+        int size = 1;
+
+        FlatType(String baseName, String type) {
+            this.baseName = baseName;
+            this.className = type.split(":")[0].trim();
+            for(String field: type.split(":")[1].trim().split(",")) {
+                String[] parts = field.trim().split(" ");
+                fields.add(new String[]{parts[0], parts[1], String.valueOf(size)});
+                size += parts[0].equals("Token") ? 2 : 1;
+            }
+            if(type.split(":").length > 2) {
+                for(String annotation: type.split(":")[2].trim().split(",")) {
+                    String[] parts = annotation.trim().split(" ");
+                    // only int annotations are stored, runtime caches stay on the object tree
+                    if(!parts[0].equals("int")) continue;
+                    annotations.add(new String[]{parts[1], String.valueOf(size)});
+                    size++;
+                }
+            }
+        }
+
+        String kind() {
+            return className.toUpperCase() + "_" + baseName.toUpperCase();
+        }
+
+        String accessor(String field) {
+            return Character.toLowerCase(className.charAt(0)) + className.substring(1)
+                    + Character.toUpperCase(field.charAt(0)) + field.substring(1);
+        }
+    }
+
+    // Emits FlatAST: the same tree stored in one int[] arena, with a visitor over node offsets
+    // and a converter from the object tree.
+    private static void defineFlatAST(String outputDir, List<String> exprTypes, List<String> stmtTypes) throws IOException {
+        List<FlatType> types = new ArrayList<>();
+        for(String type: exprTypes) types.add(new FlatType("Expr", type));
+        for(String type: stmtTypes) types.add(new FlatType("Stmt", type));
+
+        Path p = Path.of(outputDir, "FlatAST.java");
+        PrintWriter writer = new PrintWriter(Files.newOutputStream(p));
+
+        writer.println("package com.interpreter.lox.parser;");
+        writer.println();
+        writer.println("import com.interpreter.lox.lexer.Token;");
+        writer.println("import com.interpreter.lox.lexer.TokenType;");
+        writer.println();
+        writer.println("import java.io.DataOutputStream;");
+        writer.println("import java.io.IOException;");
+        writer.println("import java.io.OutputStream;");
+        writer.println("import java.nio.ByteBuffer;");
+        writer.println("import java.nio.charset.StandardCharsets;");
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.Arrays;");
+        writer.println("import java.util.HashMap;");
+        writer.println("import java.util.List;");
+        writer.println("import java.util.Map;");
+        writer.println();
+        writer.println("// Expr/Stmt trees encoded in a single int[] arena. A node is the offset of its kind,");
+        writer.println("// followed by its fields: child nodes as offsets (-1 for none), tokens as a lexeme index and");
+        writer.println("// a packed line and type, literals as an index into a side table, lists as the offset of a");
+        writer.println("// block holding their length and elements, and int annotations in place.");
+        writer.println("public class FlatAST {");
+        for(int i = 0; i < types.size(); i++) {
+            writer.println("    public static final int " + types.get(i).kind() + " = " + i + ";");
+        }
+        writer.println();
+        writer.println("    // changes whenever the node layout does, so serialized trees of another layout are rejected");
+        writer.println("    public static final int FORMAT = " + (exprTypes.toString() + stmtTypes.toString()).hashCode() + ";");
+        writer.println();
+        writer.println("    private static final TokenType[] TOKEN_TYPES = TokenType.values();");
+        writer.println("    private static final int TYPE_BITS = 6;");
+        writer.println();
+        writer.println("    private int[] nodes = new int[256];");
+        writer.println("    private int size = 0;");
+        writer.println("    // lexemes of the tokens, each distinct one stored once");
+        writer.println("    private String[] strings = new String[64];");
+        writer.println("    private int stringCount = 0;");
+        writer.println("    private Object[] literals = new Object[64];");
+        writer.println("    private int literalCount = 0;");
+        writer.println("    // list block of the top-level statements");
+        writer.println("    private int program;");
+        writer.println();
+        writer.println("    public interface Visitor<R> {");
+        for(FlatType type: types) {
+            writer.println("        R visit" + type.className + type.baseName + "(int node);");
+        }
+        writer.println("    }");
+        writer.println();
+        writer.println("    public <R> R accept(int node, Visitor<R> visitor) {");
+        writer.println("        switch (nodes[node]) {");
+        for(FlatType type: types) {
+            writer.println("            case " + type.kind() + ": return visitor.visit" + type.className + type.baseName + "(node);");
+        }
+        writer.println("        }");
+        writer.println("        throw new IllegalStateException(\"Unknown node kind \" + nodes[node] + \" at \" + node);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public int kind(int node) {");
+        writer.println("        return nodes[node];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public int statementCount() {");
+        writer.println("        return nodes[program];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public int statement(int index) {");
+        writer.println("        return nodes[program + 1 + index];");
+        writer.println("    }");
+
+        for(FlatType type: types) {
+            writer.println();
+            writer.println("    // " + type.className + " " + type.baseName);
+            for(String[] field: type.fields) {
+                String fieldType = field[0];
+                String name = type.accessor(field[1]);
+                String at = "node + " + field[2];
+                if(fieldType.equals("Expr") || fieldType.equals("Stmt")) {
+                    writer.println("    public int " + name + "(int node) {");
+                    writer.println("        return nodes[" + at + "];");
+                    writer.println("    }");
+                } else if(fieldType.equals("Token")) {
+                    writer.println("    public Token " + name + "(int node) {");
+                    writer.println("        return token(" + at + ");");
+                    writer.println("    }");
+                    writer.println("    public TokenType " + name + "Type(int node) {");
+                    writer.println("        return TOKEN_TYPES[nodes[" + at + " + 1] & ((1 << TYPE_BITS) - 1)];");
+                    writer.println("    }");
+                } else if(fieldType.equals("Object")) {
+                    writer.println("    public Object " + name + "(int node) {");
+                    writer.println("        int literal = nodes[" + at + "];");
+                    writer.println("        return literal == -1 ? null : literals[literal];");
+                    writer.println("    }");
+                } else if(fieldType.equals("List<Token>")) {
+                    writer.println("    public int " + name + "Size(int node) {");
+                    writer.println("        return nodes[nodes[" + at + "]];");
+                    writer.println("    }");
+                    writer.println("    public Token " + name + "(int node, int index) {");
+                    writer.println("        return token(nodes[" + at + "] + 1 + 2 * index);");
+                    writer.println("    }");
+                } else {
+                    writer.println("    public int " + name + "Size(int node) {");
+                    writer.println("        return nodes[nodes[" + at + "]];");
+                    writer.println("    }");
+                    writer.println("    public int " + name + "(int node, int index) {");
+                    writer.println("        return nodes[nodes[" + at + "] + 1 + index];");
+                    writer.println("    }");
+                }
+            }
+            for(String[] annotation: type.annotations) {
+                String name = type.accessor(annotation[0]);
+                String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                writer.println("    public int " + name + "(int node) {");
+                writer.println("        return nodes[node + " + annotation[1] + "];");
+                writer.println("    }");
+                writer.println("    public void " + setter + "(int node, int value) {");
+                writer.println("        nodes[node + " + annotation[1] + "] = value;");
+                writer.println("    }");
+            }
+        }
+
+        writer.println();
+        writer.println("    private Token token(int at) {");
+        writer.println("        int packed = nodes[at + 1];");
+        writer.println("        return new Token(TOKEN_TYPES[packed & ((1 << TYPE_BITS) - 1)], strings[nodes[at]], null, packed >>> TYPE_BITS);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public void write(OutputStream out) throws IOException {");
+        writer.println("        DataOutputStream data = new DataOutputStream(out);");
+        writer.println("        data.writeInt(FORMAT);");
+        writer.println("        data.writeInt(program);");
+        writer.println("        data.writeInt(size);");
+        writer.println("        ByteBuffer buffer = ByteBuffer.allocate(size * Integer.BYTES);");
+        writer.println("        buffer.asIntBuffer().put(nodes, 0, size);");
+        writer.println("        data.write(buffer.array());");
+        writer.println("        data.writeInt(stringCount);");
+        writer.println("        for(int i = 0; i < stringCount; i++) {");
+        writer.println("            writeString(data, strings[i]);");
+        writer.println("        }");
+        writer.println("        data.writeInt(literalCount);");
+        writer.println("        for(int i = 0; i < literalCount; i++) {");
+        writer.println("            Object literal = literals[i];");
+        writer.println("            if(literal instanceof Double) {");
+        writer.println("                data.writeByte('D');");
+        writer.println("                data.writeDouble((double) literal);");
+        writer.println("            } else if(literal instanceof Boolean) {");
+        writer.println("                data.writeByte('B');");
+        writer.println("                data.writeBoolean((boolean) literal);");
+        writer.println("            } else if(literal instanceof String) {");
+        writer.println("                data.writeByte('S');");
+        writer.println("                writeString(data, (String) literal);");
+        writer.println("            } else {");
+        writer.println("                throw new IOException(\"Literal can't be serialized: \" + literal);");
+        writer.println("            }");
+        writer.println("        }");
+        writer.println("        data.flush();");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public static FlatAST read(ByteBuffer in) throws IOException {");
+        writer.println("        if(in.getInt() != FORMAT) throw new IOException(\"Unsupported tree format\");");
+        writer.println("        FlatAST ast = new FlatAST();");
+        writer.println("        ast.program = in.getInt();");
+        writer.println("        ast.size = in.getInt();");
+        writer.println("        ast.nodes = new int[ast.size];");
+        writer.println("        in.asIntBuffer().get(ast.nodes);");
+        writer.println("        in.position(in.position() + ast.size * Integer.BYTES);");
+        writer.println("        ast.stringCount = in.getInt();");
+        writer.println("        ast.strings = new String[ast.stringCount];");
+        writer.println("        for(int i = 0; i < ast.stringCount; i++) {");
+        writer.println("            ast.strings[i] = readString(in);");
+        writer.println("        }");
+        writer.println("        ast.literalCount = in.getInt();");
+        writer.println("        ast.literals = new Object[ast.literalCount];");
+        writer.println("        for(int i = 0; i < ast.literalCount; i++) {");
+        writer.println("            switch (in.get()) {");
+        writer.println("                case 'D': ast.literals[i] = in.getDouble(); break;");
+        writer.println("                case 'B': ast.literals[i] = in.get() != 0; break;");
+        writer.println("                case 'S': ast.literals[i] = readString(in); break;");
+        writer.println("                default: throw new IOException(\"Unknown literal tag\");");
+        writer.println("            }");
+        writer.println("        }");
+        writer.println("        return ast;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static void writeString(DataOutputStream data, String value) throws IOException {");
+        writer.println("        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);");
+        writer.println("        data.writeInt(bytes.length);");
+        writer.println("        data.write(bytes);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static String readString(ByteBuffer in) {");
+        writer.println("        byte[] bytes = new byte[in.getInt()];");
+        writer.println("        in.get(bytes);");
+        writer.println("        return new String(bytes, StandardCharsets.UTF_8);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // Rebuilds the Stmt/Expr tree, annotations included, for the engines walking objects.");
+        writer.println("    public List<Stmt> inflate() {");
+        writer.println("        return new Inflater().stmtList(program);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private class Inflater implements Visitor<Object> {");
+        for(FlatType type: types) {
+            String param = type.baseName.toLowerCase();
+            String nodeClass = type.baseName + "." + type.className;
+            List<String> arguments = new ArrayList<>();
+            for(String[] field: type.fields) {
+                String fieldType = field[0];
+                String accessor = type.accessor(field[1]) + "(node)";
+                String block = "nodes[node + " + field[2] + "]";
+                if(fieldType.equals("Expr")) arguments.add("inflateExpr(" + accessor + ")");
+                else if(fieldType.equals("Stmt")) arguments.add("inflateStmt(" + accessor + ")");
+                else if(fieldType.equals("List<Expr>")) arguments.add("exprList(" + block + ")");
+                else if(fieldType.equals("List<Stmt>")) arguments.add("stmtList(" + block + ")");
+                else if(fieldType.equals("List<Token>")) arguments.add("tokenList(" + block + ")");
+                else arguments.add(accessor);
+            }
+            writer.println();
+            writer.println("        @Override");
+            writer.println("        public Object visit" + type.className + type.baseName + "(int node) {");
+            writer.println("            " + nodeClass + " " + param + " = new " + nodeClass + "(" + String.join(", ", arguments) + ");");
+            for(String[] annotation: type.annotations) {
+                writer.println("            " + param + "." + annotation[0] + " = " + type.accessor(annotation[0]) + "(node);");
+            }
+            writer.println("            return " + param + ";");
+            writer.println("        }");
+        }
+        writer.println();
+        writer.println("        private Expr inflateExpr(int node) {");
+        writer.println("            return node == -1 ? null : (Expr) accept(node, this);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private Stmt inflateStmt(int node) {");
+        writer.println("            return node == -1 ? null : (Stmt) accept(node, this);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private List<Expr> exprList(int block) {");
+        writer.println("            List<Expr> exprs = new ArrayList<>(nodes[block]);");
+        writer.println("            for(int i = 0; i < nodes[block]; i++) exprs.add(inflateExpr(nodes[block + 1 + i]));");
+        writer.println("            return exprs;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private List<Stmt> stmtList(int block) {");
+        writer.println("            List<Stmt> stmts = new ArrayList<>(nodes[block]);");
+        writer.println("            for(int i = 0; i < nodes[block]; i++) stmts.add(inflateStmt(nodes[block + 1 + i]));");
+        writer.println("            return stmts;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private List<Token> tokenList(int block) {");
+        writer.println("            List<Token> tokens = new ArrayList<>(nodes[block]);");
+        writer.println("            for(int i = 0; i < nodes[block]; i++) tokens.add(token(block + 1 + 2 * i));");
+        writer.println("            return tokens;");
+        writer.println("        }");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public static FlatAST flatten(List<Stmt> statements) {");
+        writer.println("        FlatAST ast = new FlatAST();");
+        writer.println("        Flattener flattener = ast.new Flattener();");
+        writer.println("        ast.program = flattener.stmtList(statements);");
+        writer.println("        ast.nodes = Arrays.copyOf(ast.nodes, ast.size);");
+        writer.println("        ast.strings = Arrays.copyOf(ast.strings, ast.stringCount);");
+        writer.println("        ast.literals = Arrays.copyOf(ast.literals, ast.literalCount);");
+        writer.println("        return ast;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private int allocate(int slots) {");
+        writer.println("        if(size + slots > nodes.length) {");
+        writer.println("            nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, size + slots));");
+        writer.println("        }");
+        writer.println("        int node = size;");
+        writer.println("        size += slots;");
+        writer.println("        return node;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // Builds the arena bottom-up: children are stored before the node referring to them.");
+        writer.println("    private class Flattener implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {");
+        writer.println("        private final Map<String, Integer> stringIndex = new HashMap<>();");
+        writer.println("        private final Map<Object, Integer> literalIndex = new HashMap<>();");
+        for(FlatType type: types) {
+            String param = type.baseName.toLowerCase();
+            writer.println();
+            writer.println("        @Override");
+            writer.println("        public Integer visit" + type.className + type.baseName + "(" + type.baseName + "." + type.className + " " + param + ") {");
+            // children first, so they get lower offsets than their parent
+            for(String[] field: type.fields) {
+                String fieldType = field[0];
+                String value = param + "." + field[1];
+                if(fieldType.equals("Expr") || fieldType.equals("Stmt")) {
+                    writer.println("            int " + field[1] + " = node(" + value + ");");
+                } else if(fieldType.equals("List<Expr>")) {
+                    writer.println("            int " + field[1] + " = exprList(" + value + ");");
+                } else if(fieldType.equals("List<Stmt>")) {
+                    writer.println("            int " + field[1] + " = stmtList(" + value + ");");
+                } else if(fieldType.equals("List<Token>")) {
+                    writer.println("            int " + field[1] + " = tokenList(" + value + ");");
+                }
+            }
+            writer.println("            int node = allocate(" + type.size + ");");
+            writer.println("            nodes[node] = " + type.kind() + ";");
+            for(String[] field: type.fields) {
+                String fieldType = field[0];
+                String at = "node + " + field[2];
+                String value = param + "." + field[1];
+                if(fieldType.equals("Token")) {
+                    writer.println("            putToken(" + at + ", " + value + ");");
+                } else if(fieldType.equals("Object")) {
+                    writer.println("            nodes[" + at + "] = literal(" + value + ");");
+                } else {
+                    writer.println("            nodes[" + at + "] = " + field[1] + ";");
+                }
+            }
+            for(String[] annotation: type.annotations) {
+                writer.println("            nodes[node + " + annotation[1] + "] = " + param + "." + annotation[0] + ";");
+            }
+            writer.println("            return node;");
+            writer.println("        }");
+        }
+        writer.println();
+        writer.println("        private int node(Expr expr) {");
+        writer.println("            return expr == null ? -1 : expr.accept(this);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int node(Stmt stmt) {");
+        writer.println("            return stmt == null ? -1 : stmt.accept(this);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int exprList(List<Expr> exprs) {");
+        writer.println("            int[] items = new int[exprs.size()];");
+        writer.println("            for(int i = 0; i < items.length; i++) items[i] = node(exprs.get(i));");
+        writer.println("            return list(items);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int stmtList(List<Stmt> stmts) {");
+        writer.println("            int[] items = new int[stmts.size()];");
+        writer.println("            for(int i = 0; i < items.length; i++) items[i] = node(stmts.get(i));");
+        writer.println("            return list(items);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int list(int[] items) {");
+        writer.println("            int block = allocate(1 + items.length);");
+        writer.println("            nodes[block] = items.length;");
+        writer.println("            System.arraycopy(items, 0, nodes, block + 1, items.length);");
+        writer.println("            return block;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int tokenList(List<Token> tokens) {");
+        writer.println("            int block = allocate(1 + 2 * tokens.size());");
+        writer.println("            nodes[block] = tokens.size();");
+        writer.println("            for(int i = 0; i < tokens.size(); i++) putToken(block + 1 + 2 * i, tokens.get(i));");
+        writer.println("            return block;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private void putToken(int at, Token token) {");
+        writer.println("            nodes[at] = string(token.lexeme());");
+        writer.println("            nodes[at + 1] = token.line << TYPE_BITS | token.type.ordinal();");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int string(String value) {");
+        writer.println("            Integer index = stringIndex.get(value);");
+        writer.println("            if(index != null) return index;");
+        writer.println("            if(stringCount == strings.length) strings = Arrays.copyOf(strings, stringCount * 2);");
+        writer.println("            strings[stringCount] = value;");
+        writer.println("            stringIndex.put(value, stringCount);");
+        writer.println("            return stringCount++;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int literal(Object value) {");
+        writer.println("            if(value == null) return -1;");
+        writer.println("            Integer index = literalIndex.get(value);");
+        writer.println("            if(index != null) return index;");
+        writer.println("            if(literalCount == literals.length) literals = Arrays.copyOf(literals, literalCount * 2);");
+        writer.println("            literals[literalCount] = value;");
+        writer.println("            literalIndex.put(value, literalCount);");
+        writer.println("            return literalCount++;");
+        writer.println("        }");
+        writer.println("    }");
+        writer.println("}");
+
+        writer.flush();
+        writer.close();
+    }
 }